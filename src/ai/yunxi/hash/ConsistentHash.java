@@ -1,24 +1,50 @@
 package ai.yunxi.hash;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class ConsistentHash<T> {
+/**
+ * 线程安全的一致性哈希
+ * <p>
+ * 环是不可变快照，get只读取一次当前快照，不加锁也不重试(wait-free)。
+ * 增删节点采用写时复制：在旧快照上算出新快照，再用CAS发布，并发写入时失败的一方基于最新快照重算。
+ * 每次发布版本号加1，并返回这次变更中归属发生变化的hash区间，调用方据此只迁移受影响的数据。
+ * <p>
+ * 节点可以带权重，虚拟节点数为numberOfReplicas * weight，机器容量不同时按容量设置权重即可。
+ * 有界负载模式(Consistent Hashing with Bounded Loads)下，get会跳过负载超过(1+ε)倍平均负载的节点。
+ */
+public class ConsistentHash<T> implements IRouter<T> {
 
     // Hash函数接口
     private final IHashService iHashService;
     // 每个机器节点关联的虚拟节点数量
     private final int          numberOfReplicas;
-    // 环形虚拟节点
-    private final SortedMap<Long, T> circle = new TreeMap<>();
+    // 环形虚拟节点，不可变快照，增删节点时整体替换
+    private final AtomicReference<HashRing<T>> ring = new AtomicReference<>();
 
     public ConsistentHash(IHashService iHashService, int numberOfReplicas, Collection<T> nodes) {
+        this(iHashService, numberOfReplicas, withDefaultWeight(nodes));
+    }
+
+    /**
+     * @param weightedNodes 真实节点及其权重，权重必须大于0
+     */
+    public ConsistentHash(IHashService iHashService, int numberOfReplicas, Map<T, Integer> weightedNodes) {
+        if (numberOfReplicas <= 0) {
+            throw new RuntimeException("虚拟节点数必须大于0：" + numberOfReplicas);
+        }
         this.iHashService = iHashService;
         this.numberOfReplicas = numberOfReplicas;
-        for (T node : nodes) {
-            add(node);
-        }
+        // 一次性建环，避免逐个add时反复复制快照
+        List<T> nodes = new ArrayList<>(weightedNodes.keySet());
+        int[] weights = weightsOf(nodes, weightedNodes);
+        this.ring.set(HashRing.of(nodes, tokensOf(nodes, weights), weights));
     }
 
     /**
@@ -26,10 +52,18 @@ public class ConsistentHash<T> {
      *
      * @param node T
      */
-    public void add(T node) {
-        for (int i = 0; i < this.numberOfReplicas; i++) {
-            circle.put(this.iHashService.hash(node.toString() + i), node);
-        }
+    public RingChange<T> add(T node) {
+        return update(Collections.singletonList(node), Collections.emptyList());
+    }
+
+    /**
+     * 增加带权重的真实机器节点
+     *
+     * @param node   T
+     * @param weight 权重，虚拟节点数为numberOfReplicas * weight
+     */
+    public RingChange<T> add(T node, int weight) {
+        return update(Collections.singletonMap(node, weight), Collections.emptyList());
     }
 
     /**
@@ -37,22 +71,218 @@ public class ConsistentHash<T> {
      *
      * @param node T
      */
-    public void remove(T node) {
-        for (int i = 0; i < this.numberOfReplicas; i++) {
-            circle.remove(this.iHashService.hash(node.toString() + i));
+    public RingChange<T> remove(T node) {
+        return update(Collections.emptyList(), Collections.singletonList(node));
+    }
+
+    /**
+     * 批量增加真实机器节点，只发布一个新版本
+     */
+    public RingChange<T> addAll(Collection<T> nodes) {
+        return update(nodes, Collections.emptyList());
+    }
+
+    /**
+     * 批量删除真实机器节点，只发布一个新版本
+     */
+    public RingChange<T> removeAll(Collection<T> nodes) {
+        return update(Collections.emptyList(), nodes);
+    }
+
+    /**
+     * 在一次变更中同时删除和增加节点
+     *
+     * @param added   要增加的节点
+     * @param removed 要删除的节点
+     * @return 版本变化和迁移区间
+     */
+    public RingChange<T> update(Collection<T> added, Collection<T> removed) {
+        return update(withDefaultWeight(added), removed);
+    }
+
+    /**
+     * 在一次变更中同时删除和增加带权重的节点，同一个节点既删又增即可修改它的权重
+     *
+     * @param added   要增加的节点及其权重
+     * @param removed 要删除的节点
+     * @return 版本变化和迁移区间
+     */
+    public RingChange<T> update(Map<T, Integer> added, Collection<T> removed) {
+        // 虚拟节点hash与快照无关，放在CAS循环外只算一次
+        List<T> addList = new ArrayList<>(added.keySet());
+        int[] weights = weightsOf(addList, added);
+        long[][] tokens = tokensOf(addList, weights);
+        while (true) {
+            HashRing<T> current = ring.get();
+            HashRing<T> next = current.without(removed).with(addList, tokens, weights);
+            if (next == current) {
+                return new RingChange<>(current.version, current.version, Collections.emptyList());
+            }
+            next = next.withVersion(current.version + 1);
+            if (ring.compareAndSet(current, next)) {
+                return new RingChange<>(current.version, next.version, HashRing.diff(current, next));
+            }
         }
     }
 
-    public T get(String key) {
-        if (circle.isEmpty()) return null;
+    /**
+     * 当前快照的版本号
+     */
+    public long version() {
+        return ring.get().version;
+    }
 
-        long hash = iHashService.hash(key);
+    @Override
+    public T get(String key) {
+        // 读线程只读一次快照，不加锁
+        HashRing<T> current = ring.get();
+        if (current.isEmpty()) return null;
 
         // 沿环的顺时针找到一个虚拟节点
-        if (!circle.containsKey(hash)) {
-            SortedMap<Long, T> tailMap = circle.tailMap(hash);
-            hash = tailMap.isEmpty() ? circle.firstKey() : tailMap.firstKey();
+        return current.get(iHashService.hashAsLong(key));
+    }
+
+    /**
+     * 批量路由，所有key在同一个快照上查找
+     *
+     * @param keys key
+     * @param out  输出，out[i]是负责keys[i]的节点，环为空时为null，长度不小于keys.length
+     */
+    public void getAll(String[] keys, T[] out) {
+        long[] hashes = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            hashes[i] = iHashService.hashAsLong(keys[i]);
+        }
+        int[] nodeIdx = new int[keys.length];
+        List<T> nodes = routeBatch(hashes, nodeIdx);
+        // 环为空时与get一样返回null
+        if (nodes.isEmpty()) {
+            Arrays.fill(out, 0, keys.length, null);
+            return;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            out[i] = nodes.get(nodeIdx[i]);
+        }
+    }
+
+    /**
+     * 按已算好的hash批量路由
+     *
+     * @param hashes  key的hash，见IHashService.hashAsLong
+     * @param nodeIdx 输出，nodeIdx[i]是hashes[i]所属节点在返回列表中的下标，环为空时不写入
+     * @return 本次查找所用快照的节点列表
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> routeBatch(long[] hashes, int[] nodeIdx) {
+        HashRing<T> current = ring.get();
+        if (!current.isEmpty()) current.route(hashes, nodeIdx);
+        return (List<T>) Collections.unmodifiableList(Arrays.asList(current.nodes));
+    }
+
+    /**
+     * 批量路由并按节点分组，调用方可以对每个节点只发一次请求
+     *
+     * @param keys key
+     * @return 节点 -> 该节点负责的key在keys中的下标，下标升序
+     */
+    public Map<T, int[]> group(String[] keys) {
+        long[] hashes = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            hashes[i] = iHashService.hashAsLong(keys[i]);
+        }
+        int[] nodeIdx = new int[keys.length];
+        List<T> nodes = routeBatch(hashes, nodeIdx);
+        Map<T, int[]> grouped = new LinkedHashMap<>();
+        if (nodes.isEmpty()) return grouped;
+        int[][] groups = groupByNode(nodeIdx, nodes.size());
+        for (int i = 0; i < groups.length; i++) {
+            if (groups[i].length > 0) grouped.put(nodes.get(i), groups[i]);
+        }
+        return grouped;
+    }
+
+    /**
+     * 把routeBatch的结果按节点分组，先计数再一次填充
+     *
+     * @param nodeIdx   routeBatch输出的节点下标
+     * @param nodeCount routeBatch返回的节点数
+     * @return groups[j]是分到第j个节点的下标，升序
+     */
+    public static int[][] groupByNode(int[] nodeIdx, int nodeCount) {
+        int[] count = new int[nodeCount];
+        for (int idx : nodeIdx) {
+            count[idx]++;
+        }
+        int[][] groups = new int[nodeCount][];
+        for (int j = 0; j < nodeCount; j++) {
+            groups[j] = new int[count[j]];
+            count[j] = 0;
+        }
+        for (int i = 0; i < nodeIdx.length; i++) {
+            int j = nodeIdx[i];
+            groups[j][count[j]++] = i;
+        }
+        return groups;
+    }
+
+    /**
+     * 有界负载模式的查找
+     * 沿环顺时针找到第一个负载低于上限的节点，上限为ceil((1 + epsilon) * 平均负载 * 权重)。
+     * 调用方把key分配给返回的节点后应更新tracker，例如LoadTracker.increment
+     *
+     * @param key     String
+     * @param tracker 负载统计
+     * @param epsilon 允许超出平均负载的比例，越小越均衡，但迁移的key越多
+     */
+    public T get(String key, ILoadTracker<? super T> tracker, double epsilon) {
+        HashRing<T> current = ring.get();
+        if (current.isEmpty()) return null;
+
+        return current.getBounded(iHashService.hashAsLong(key), tracker, epsilon);
+    }
+
+    private static <T> Map<T, Integer> withDefaultWeight(Collection<T> nodes) {
+        Map<T, Integer> weighted = new LinkedHashMap<>();
+        for (T node : nodes) {
+            weighted.put(node, 1);
+        }
+        return weighted;
+    }
+
+    // 权重为null或不大于0时报错；虚拟节点数numberOfReplicas * weight不能超出int
+    private int[] weightsOf(List<T> nodes, Map<T, Integer> weightedNodes) {
+        int[] weights = new int[nodes.size()];
+        for (int i = 0; i < weights.length; i++) {
+            Integer weight = weightedNodes.get(nodes.get(i));
+            if (weight == null || weight <= 0) throw new RuntimeException("权重必须大于0：" + nodes.get(i));
+            if (weight > Integer.MAX_VALUE / numberOfReplicas) {
+                throw new RuntimeException("权重过大，虚拟节点数超出int：" + nodes.get(i) + "，权重" + weight);
+            }
+            weights[i] = weight;
+        }
+        return weights;
+    }
+
+    private long[][] tokensOf(List<T> nodes, int[] weights) {
+        long[][] tokens = new long[nodes.size()][];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = tokensOf(nodes.get(i), weights[i]);
+        }
+        return tokens;
+    }
+
+    // 计算节点的所有虚拟节点hash值，升序去重，权重为1时与不带权重的环完全相同
+    private long[] tokensOf(T node, int weight) {
+        int replicas = this.numberOfReplicas * weight;
+        long[] tokens = new long[replicas];
+        for (int i = 0; i < replicas; i++) {
+            tokens[i] = this.iHashService.hashAsLong(node.toString() + i);
+        }
+        Arrays.sort(tokens);
+        int n = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            if (i == 0 || tokens[i] != tokens[n - 1]) tokens[n++] = tokens[i];
         }
-        return circle.get(hash);
+        return n == tokens.length ? tokens : Arrays.copyOf(tokens, n);
     }
 }
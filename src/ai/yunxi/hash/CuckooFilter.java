@@ -0,0 +1,264 @@
+package ai.yunxi.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 布谷鸟过滤器，与布隆过滤器相比支持删除
+ * 来源于论文《Cuckoo Filter: Practically Better Than Bloom》
+ * 每个桶有4个槽，每个槽保存key的16位指纹，一个桶正好是一个long。
+ * key有两个候选桶i1和i2 = i1 ^ hash(指纹)，由任意一个桶和指纹都能算出另一个桶，所以踢出指纹时不需要原始key。
+ * 插入时两个桶都满了就随机踢出一个指纹，把它挪到它的另一个桶，最多踢MAX_KICKS次；
+ * 仍然失败时被踢出的指纹暂存在victim中，此后过滤器视为已满。
+ * 4槽16位指纹的误判率约为8 / 2^16，装载率可以达到95%。
+ * 非线程安全。
+ */
+public class CuckooFilter {
+
+    // 序列化格式的版本号
+    private static final byte SERIAL_VERSION = 1;
+    private static final int SLOTS = 4;
+    private static final int FINGERPRINT_BITS = 16;
+    private static final long FINGERPRINT_MASK = (1L << FINGERPRINT_BITS) - 1;
+    // 每个槽的最低位和最高位，用于一次比较4个槽
+    private static final long LOW_BITS = 0x0001_0001_0001_0001L;
+    private static final long HIGH_BITS = 0x8000_8000_8000_8000L;
+    private static final int MAX_KICKS = 500;
+
+    // Hash函数接口
+    private final IHashService iHashService;
+    private final long[] buckets;
+    private final int mask;
+    private long count;
+    // 踢出失败时无处安放的指纹，0表示没有
+    private int victimIndex;
+    private int victimFingerprint;
+    // 选择踢出槽位的xorshift随机数
+    private int random = 0x9E3779B9;
+
+    /**
+     * @param capacity 预计保存的key数量，桶数按95%装载率向上取整为2的幂
+     */
+    public CuckooFilter(IHashService iHashService, long capacity) {
+        this(iHashService, bucketCountOf(capacity), null);
+    }
+
+    private CuckooFilter(IHashService iHashService, int bucketCount, long[] buckets) {
+        this.iHashService = iHashService;
+        this.buckets = buckets == null ? new long[bucketCount] : buckets;
+        this.mask = bucketCount - 1;
+    }
+
+    private static int bucketCountOf(long capacity) {
+        long n = Math.max(1, (long) Math.ceil(capacity / (SLOTS * 0.95)));
+        if (n > 1 << 30) {
+            throw new RuntimeException("容量过大：" + capacity);
+        }
+        int bucketCount = (int) n;
+        return Integer.highestOneBit(bucketCount) == bucketCount ? bucketCount : Integer.highestOneBit(bucketCount) << 1;
+    }
+
+    public boolean put(CharSequence key) {
+        return putHashed(iHashService.hashAsLong(key));
+    }
+
+    public boolean mightContain(CharSequence key) {
+        return mightContainHashed(iHashService.hashAsLong(key));
+    }
+
+    public boolean delete(CharSequence key) {
+        return deleteHashed(iHashService.hashAsLong(key));
+    }
+
+    /**
+     * 插入key，过滤器已满时返回false
+     * 同一个key可以插入多次，每次占一个槽，删除时也要删除同样的次数
+     */
+    public boolean putHashed(long hash) {
+        if (victimFingerprint != 0) return false;
+        int fp = fingerprint(hash);
+        int i1 = index(hash);
+        if (insert(i1, fp) || insert(alternate(i1, fp), fp)) {
+            count++;
+            return true;
+        }
+        // 两个桶都满了，从其中一个开始踢
+        int index = (next() & 1) == 0 ? i1 : alternate(i1, fp);
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            int slot = next() & (SLOTS - 1);
+            int shift = slot * FINGERPRINT_BITS;
+            int evicted = (int) ((buckets[index] >>> shift) & FINGERPRINT_MASK);
+            buckets[index] = (buckets[index] & ~(FINGERPRINT_MASK << shift)) | ((long) fp << shift);
+            fp = evicted;
+            index = alternate(index, fp);
+            if (insert(index, fp)) {
+                count++;
+                return true;
+            }
+        }
+        // 新key已经在表里了，最后被踢出的指纹放入victim，它仍然能被查到
+        victimIndex = index;
+        victimFingerprint = fp;
+        count++;
+        return true;
+    }
+
+    public boolean mightContainHashed(long hash) {
+        int fp = fingerprint(hash);
+        int i1 = index(hash);
+        int i2 = alternate(i1, fp);
+        if (contains(buckets[i1], fp) || contains(buckets[i2], fp)) return true;
+        return victimFingerprint == fp && (victimIndex == i1 || victimIndex == i2);
+    }
+
+    /**
+     * 删除一个key，只能删除确实插入过的key，否则可能误删指纹相同的其他key
+     */
+    public boolean deleteHashed(long hash) {
+        int fp = fingerprint(hash);
+        int i1 = index(hash);
+        int i2 = alternate(i1, fp);
+        if (victimFingerprint == fp && (victimIndex == i1 || victimIndex == i2)) {
+            victimFingerprint = 0;
+            count--;
+            return true;
+        }
+        if (remove(i1, fp) || remove(i2, fp)) {
+            count--;
+            if (victimFingerprint != 0) {
+                // 腾出了空位，尝试把victim放回表中
+                int index = victimIndex, victim = victimFingerprint;
+                if (insert(index, victim) || insert(alternate(index, victim), victim)) {
+                    victimFingerprint = 0;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // 16位指纹取hash的低位，0表示空槽，所以指纹不能为0
+    private static int fingerprint(long hash) {
+        int fp = (int) (hash & FINGERPRINT_MASK);
+        return fp == 0 ? 1 : fp;
+    }
+
+    // 桶下标取hash的高位，与指纹不相关
+    private int index(long hash) {
+        return (int) (hash >>> 32) & mask;
+    }
+
+    // 异或是自反的，alternate(alternate(i, fp), fp) == i
+    private int alternate(int index, int fp) {
+        return (index ^ (fp * 0x5bd1e995)) & mask;
+    }
+
+    // 把4个槽同时与指纹比较，相等的槽异或后为0，再用"是否有为0的16位"的位运算判断
+    private static boolean contains(long bucket, int fp) {
+        long x = bucket ^ (fp * LOW_BITS);
+        return ((x - LOW_BITS) & ~x & HIGH_BITS) != 0;
+    }
+
+    private boolean insert(int index, int fp) {
+        long bucket = buckets[index];
+        for (int shift = 0; shift < Long.SIZE; shift += FINGERPRINT_BITS) {
+            if (((bucket >>> shift) & FINGERPRINT_MASK) == 0) {
+                buckets[index] = bucket | ((long) fp << shift);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean remove(int index, int fp) {
+        long bucket = buckets[index];
+        for (int shift = 0; shift < Long.SIZE; shift += FINGERPRINT_BITS) {
+            if (((bucket >>> shift) & FINGERPRINT_MASK) == fp) {
+                buckets[index] = bucket & ~(FINGERPRINT_MASK << shift);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int next() {
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return random;
+    }
+
+    /**
+     * 把另一个同样大小的过滤器中的指纹逐个插入，结果相当于两者的多重集并集
+     * 指纹所在的桶就是它的一个候选桶，无需原始key
+     *
+     * @return 过滤器放满时返回false，已插入的部分保留
+     */
+    public boolean merge(CuckooFilter other) {
+        if (other.buckets.length != buckets.length) {
+            throw new RuntimeException("过滤器大小不同，不能合并");
+        }
+        for (int index = 0; index < other.buckets.length; index++) {
+            long bucket = other.buckets[index];
+            for (int shift = 0; shift < Long.SIZE && bucket != 0; shift += FINGERPRINT_BITS) {
+                int fp = (int) ((bucket >>> shift) & FINGERPRINT_MASK);
+                if (fp != 0 && !putFingerprint(index, fp)) return false;
+            }
+        }
+        return other.victimFingerprint == 0 || putFingerprint(other.victimIndex, other.victimFingerprint);
+    }
+
+    // 由桶下标和指纹插入，index与指纹的低位无关，直接当作hash的高32位
+    private boolean putFingerprint(int index, int fp) {
+        return putHashed(((long) index << 32) | fp);
+    }
+
+    /**
+     * 当前保存的key数量
+     */
+    public long size() {
+        return count;
+    }
+
+    public double loadFactor() {
+        return (double) count / ((long) buckets.length * SLOTS);
+    }
+
+    public long sizeInBytes() {
+        return (long) buckets.length * Long.BYTES;
+    }
+
+    /**
+     * 序列化格式：1字节版本号 + 桶数 + count + victim + 所有桶(大端序)
+     */
+    public byte[] getBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(1 + 3 * Integer.BYTES + Long.BYTES + buckets.length * Long.BYTES);
+        buf.put(SERIAL_VERSION).putInt(buckets.length).putLong(count).putInt(victimIndex).putInt(victimFingerprint);
+        for (long bucket : buckets) {
+            buf.putLong(bucket);
+        }
+        return buf.array();
+    }
+
+    public static CuckooFilter build(IHashService iHashService, byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        byte version = buf.get();
+        if (version != SERIAL_VERSION) {
+            throw new RuntimeException("不支持的序列化版本：" + version);
+        }
+        int bucketCount = buf.getInt();
+        long count = buf.getLong();
+        int victimIndex = buf.getInt(), victimFingerprint = buf.getInt();
+        if (Integer.bitCount(bucketCount) != 1 || buf.remaining() != (long) bucketCount * Long.BYTES) {
+            throw new RuntimeException("数据长度与桶数不符：" + bytes.length);
+        }
+        long[] buckets = new long[bucketCount];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = buf.getLong();
+        }
+        CuckooFilter filter = new CuckooFilter(iHashService, bucketCount, buckets);
+        filter.count = count;
+        filter.victimIndex = victimIndex;
+        filter.victimFingerprint = victimFingerprint;
+        return filter;
+    }
+}
@@ -0,0 +1,366 @@
+package ai.yunxi.hash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 不可变的哈希环快照
+ * <p>
+ * 虚拟节点的hash值保存在升序的long[]中，owners[i]是tokens[i]所属真实节点在nodes中的下标。
+ * 查找时在tokens上二分，找到第一个不小于key的hash值的虚拟节点，越过末尾则回到0号位置，整个过程不产生任何对象。
+ * 增删节点时不修改原快照，而是归并/过滤出一个新快照，读线程拿到的快照永远是完整一致的。
+ */
+final class HashRing<T> {
+
+    // 批量查找时小于该数量直接逐个二分
+    private static final int BATCH_THRESHOLD = 256;
+    // 基数排序每轮处理的位数
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+
+    private static final HashRing<?> EMPTY = new HashRing<>(new long[0], new int[0], new Object[0], new int[0]);
+
+    // 虚拟节点的hash值，按有符号long升序排列，与TreeMap<Long, T>的顺序一致
+    final long[] tokens;
+    // 与tokens平行的数组，保存虚拟节点所属真实节点的下标
+    final int[] owners;
+    // 真实节点
+    final Object[] nodes;
+    // 与nodes平行的数组，保存真实节点的权重
+    final int[] weights;
+    // 权重之和
+    final long totalWeight;
+    // 版本号，每次成员变更加1
+    final long version;
+
+    private HashRing(long[] tokens, int[] owners, Object[] nodes, int[] weights) {
+        this(tokens, owners, nodes, weights, 0);
+    }
+
+    private HashRing(long[] tokens, int[] owners, Object[] nodes, int[] weights, long version) {
+        this.tokens = tokens;
+        this.owners = owners;
+        this.nodes = nodes;
+        this.weights = weights;
+        long sum = 0;
+        for (int weight : weights) sum += weight;
+        this.totalWeight = sum;
+        this.version = version;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> HashRing<T> empty() {
+        return (HashRing<T>) EMPTY;
+    }
+
+    /**
+     * 用一批节点一次性建环：先为每个节点构建单节点的环，再两两归并，复杂度O(N*logn)
+     *
+     * @param nodes  真实节点
+     * @param tokens  tokens[i]是nodes[i]的虚拟节点hash值，已升序去重
+     * @param weights weights[i]是nodes[i]的权重
+     */
+    static <T> HashRing<T> of(List<T> nodes, long[][] tokens, int[] weights) {
+        if (nodes.isEmpty()) return empty();
+        return build(nodes, tokens, weights, 0, nodes.size());
+    }
+
+    private static <T> HashRing<T> build(List<T> nodes, long[][] tokens, int[] weights, int from, int to) {
+        if (to - from == 1) return single(nodes.get(from), tokens[from], weights[from]);
+        int mid = (from + to) >>> 1;
+        return merge(build(nodes, tokens, weights, from, mid), build(nodes, tokens, weights, mid, to));
+    }
+
+    private static <T> HashRing<T> single(T node, long[] nodeTokens, int weight) {
+        return new HashRing<>(nodeTokens, new int[nodeTokens.length], new Object[]{node}, new int[]{weight});
+    }
+
+    // 归并两个环，hash值相同时right覆盖left，与TreeMap.put后写入者胜出的语义相同
+    private static <T> HashRing<T> merge(HashRing<T> left, HashRing<T> right) {
+        long[] a = left.tokens, b = right.tokens;
+        long[] tokens = new long[a.length + b.length];
+        int[] owners = new int[tokens.length];
+        int shift = left.nodes.length;
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                tokens[n] = a[i];
+                owners[n++] = left.owners[i++];
+            } else {
+                if (a[i] == b[j]) i++;
+                tokens[n] = b[j];
+                owners[n++] = right.owners[j++] + shift;
+            }
+        }
+        while (i < a.length) {
+            tokens[n] = a[i];
+            owners[n++] = left.owners[i++];
+        }
+        while (j < b.length) {
+            tokens[n] = b[j];
+            owners[n++] = right.owners[j++] + shift;
+        }
+        Object[] nodes = Arrays.copyOf(left.nodes, left.nodes.length + right.nodes.length);
+        System.arraycopy(right.nodes, 0, nodes, shift, right.nodes.length);
+        int[] weights = Arrays.copyOf(left.weights, nodes.length);
+        System.arraycopy(right.weights, 0, weights, shift, right.weights.length);
+        if (n < tokens.length) {
+            tokens = Arrays.copyOf(tokens, n);
+            owners = Arrays.copyOf(owners, n);
+        }
+        return new HashRing<>(tokens, owners, nodes, weights);
+    }
+
+    /**
+     * 返回增加了一批节点的新环，已存在的节点被忽略
+     *
+     * @param added  要增加的节点
+     * @param tokens  tokens[i]是added[i]的虚拟节点hash值，已升序去重
+     * @param weights weights[i]是added[i]的权重
+     */
+    HashRing<T> with(List<T> added, long[][] tokens, int[] weights) {
+        // 已有的和本批已加入的节点，逐个线性查找在批量增加时是O(n·m)
+        Set<Object> present = new HashSet<>(Arrays.asList(nodes));
+        List<T> fresh = new ArrayList<>();
+        List<long[]> freshTokens = new ArrayList<>();
+        int[] freshWeights = new int[added.size()];
+        for (int i = 0; i < added.size(); i++) {
+            T node = added.get(i);
+            if (present.add(node)) {
+                freshWeights[fresh.size()] = weights[i];
+                fresh.add(node);
+                freshTokens.add(tokens[i]);
+            }
+        }
+        if (fresh.isEmpty()) return this;
+        return merge(this, of(fresh, freshTokens.toArray(new long[0][]), freshWeights));
+    }
+
+    /**
+     * 返回删除了一批节点的新环，只遍历一次tokens
+     */
+    HashRing<T> without(Collection<?> removed) {
+        // remap[i]是旧下标i的新下标，-1表示被删除
+        if (removed.isEmpty()) return this;
+        // removed可能是List，先转成HashSet，避免对每个节点线性查找
+        Set<?> removedSet = new HashSet<>(removed);
+        int[] remap = new int[nodes.length];
+        int kept = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            remap[i] = removedSet.contains(nodes[i]) ? -1 : kept++;
+        }
+        if (kept == nodes.length) return this;
+        if (kept == 0) return empty();
+
+        long[] newTokens = new long[tokens.length];
+        int[] newOwners = new int[tokens.length];
+        int n = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            int owner = remap[owners[i]];
+            if (owner < 0) continue;
+            newTokens[n] = tokens[i];
+            newOwners[n++] = owner;
+        }
+        Object[] newNodes = new Object[kept];
+        int[] newWeights = new int[kept];
+        for (int i = 0; i < nodes.length; i++) {
+            if (remap[i] < 0) continue;
+            newNodes[remap[i]] = nodes[i];
+            newWeights[remap[i]] = weights[i];
+        }
+        return new HashRing<>(Arrays.copyOf(newTokens, n), Arrays.copyOf(newOwners, n), newNodes, newWeights);
+    }
+
+    /**
+     * 返回同样内容、指定版本号的快照，数组共享
+     */
+    HashRing<T> withVersion(long version) {
+        return new HashRing<>(tokens, owners, nodes, weights, version);
+    }
+
+    /**
+     * 比较两个快照，找出归属发生变化的hash区间
+     * 两个环所有虚拟节点的hash值把环切成若干段，同一段内的hash在两个环上各自归属同一个节点，
+     * 逐段比较归属，再把相邻且迁移方向相同的段合并
+     */
+    static <T> List<MovedRange<T>> diff(HashRing<T> from, HashRing<T> to) {
+        List<MovedRange<T>> moved = new ArrayList<>();
+        long[] a = from.tokens, b = to.tokens;
+        if (a.length == 0 && b.length == 0) return moved;
+
+        // 归并出两个环的所有分段边界
+        long[] bounds = new long[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            long next;
+            if (j == b.length || (i < a.length && a[i] <= b[j])) {
+                next = a[i++];
+            } else {
+                next = b[j++];
+            }
+            if (n == 0 || bounds[n - 1] != next) bounds[n++] = next;
+        }
+
+        // 第一段(bounds[n-1], bounds[0]]跨越了环的首尾
+        long start = bounds[n - 1];
+        MovedRange<T> last = null;
+        for (int k = 0; k < n; k++) {
+            long end = bounds[k];
+            T source = from.get(end);
+            T target = to.get(end);
+            if (source != target) {
+                if (last != null && last.getTo() == start && last.getSource() == source && last.getTarget() == target) {
+                    last = new MovedRange<>(last.getFrom(), end, source, target);
+                    moved.set(moved.size() - 1, last);
+                } else {
+                    last = new MovedRange<>(start, end, source, target);
+                    moved.add(last);
+                }
+            }
+            start = end;
+        }
+        // 首尾两段方向相同时也合并，保证结果里没有相邻的同向区间
+        if (moved.size() > 1) {
+            MovedRange<T> first = moved.get(0);
+            if (last.getTo() == first.getFrom() && last.getSource() == first.getSource() && last.getTarget() == first.getTarget()) {
+                moved.set(0, new MovedRange<>(last.getFrom(), first.getTo(), first.getSource(), first.getTarget()));
+                moved.remove(moved.size() - 1);
+            }
+        }
+        return moved;
+    }
+
+    int indexOfNode(Object node) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i].equals(node)) return i;
+        }
+        return -1;
+    }
+
+    boolean isEmpty() {
+        return tokens.length == 0;
+    }
+
+    /**
+     * 沿环的顺时针找到第一个hash值不小于hash的虚拟节点的位置
+     */
+    int locate(long hash) {
+        long[] t = tokens;
+        int low = 0, high = t.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (t[mid] < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == t.length ? 0 : low;
+    }
+
+    @SuppressWarnings("unchecked")
+    T nodeAt(int position) {
+        return (T) nodes[owners[position]];
+    }
+
+    T get(long hash) {
+        if (tokens.length == 0) return null;
+        return nodeAt(locate(hash));
+    }
+
+    /**
+     * 批量查找：先把hash按有符号顺序基数排序(同时带上原下标)，再从头到尾沿环走一遍，
+     * 每个hash从上一个hash的位置开始倍增查找，批量越大、越密集，单个key的平均代价越低
+     *
+     * @param hashes  key的hash
+     * @param nodeIdx 输出，nodeIdx[i]是hashes[i]所属节点在nodes中的下标
+     */
+    void route(long[] hashes, int[] nodeIdx) {
+        int n = hashes.length;
+        if (n < BATCH_THRESHOLD) {
+            for (int i = 0; i < n; i++) {
+                nodeIdx[i] = owners[locate(hashes[i])];
+            }
+            return;
+        }
+
+        // 翻转符号位后，无符号顺序就是原来的有符号顺序
+        long[] keys = new long[n], keyBuf = new long[n];
+        int[] index = new int[n], indexBuf = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = hashes[i] ^ Long.MIN_VALUE;
+            index[i] = i;
+        }
+        int[] count = new int[1 << RADIX_BITS];
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++) {
+                count[(int) (keys[i] >>> shift) & RADIX_MASK]++;
+            }
+            for (int i = 0, sum = 0; i < count.length; i++) {
+                int c = count[i];
+                count[i] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int pos = count[(int) (keys[i] >>> shift) & RADIX_MASK]++;
+                keyBuf[pos] = keys[i];
+                indexBuf[pos] = index[i];
+            }
+            long[] tk = keys;
+            keys = keyBuf;
+            keyBuf = tk;
+            int[] ti = index;
+            index = indexBuf;
+            indexBuf = ti;
+        }
+
+        long[] t = tokens;
+        int position = 0;
+        for (int i = 0; i < n; i++) {
+            long hash = keys[i] ^ Long.MIN_VALUE;
+            // 倍增找到包含答案的区间[low, high]，再在其中二分
+            int low = position, step = 1, high = position;
+            while (high < t.length && t[high] < hash) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            if (high > t.length) high = t.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (t[mid] < hash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            position = low;
+            nodeIdx[index[i]] = owners[position == t.length ? 0 : position];
+        }
+    }
+
+    /**
+     * 有界负载的查找：从hash的位置沿环顺时针走，跳过负载已达上限的节点
+     * 节点i的上限为ceil((1 + epsilon) * (totalLoad + 1) * weight[i] / totalWeight)，
+     * 所有节点上限之和大于totalLoad + 1，因此一定能找到节点
+     */
+    T getBounded(long hash, ILoadTracker<? super T> tracker, double epsilon) {
+        if (tokens.length == 0) return null;
+        double average = (1 + epsilon) * (tracker.totalLoad() + 1) / totalWeight;
+        int position = locate(hash);
+        for (int step = 0; step < tokens.length; step++) {
+            int owner = owners[position];
+            @SuppressWarnings("unchecked")
+            T node = (T) nodes[owner];
+            if (tracker.load(node) < Math.ceil(average * weights[owner])) return node;
+            if (++position == tokens.length) position = 0;
+        }
+        // 负载统计与环不同步时兜底，退回普通查找
+        return get(hash);
+    }
+}
@@ -1,52 +1,194 @@
 package ai.yunxi.hash;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 public class HashService implements IHashService {
 
+    private static final int  SEED = 0x1234ABCD;
+    private static final long M    = 0xc6a4a7935bd1e995L;
+    private static final int  R    = 47;
+
+    // 以小端序一次读取8个字节，代替ByteBuffer.wrap和getLong
+    private static final VarHandle LONG_ARRAY  = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_BUFFER = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
     /**
      * MurMurHash算法,性能高,碰撞率低
+     * 字符串按UTF-8逐字符编码，每凑满8个字节混合一次，不分配byte[]
      *
-     * @param key String
-     * @return Long
+     * @param key CharSequence
+     * @return long
      */
-    public Long hash(String key) {
-        ByteBuffer buf = ByteBuffer.wrap(key.getBytes());
-        int seed = 0x1234ABCD;
-
-        ByteOrder byteOrder = buf.order();
-        buf.order(ByteOrder.LITTLE_ENDIAN);
+    @Override
+    public long hashAsLong(CharSequence key) {
+        int length = key.length();
+        // 含有非ASCII字符时utf8Length返回字节数的相反数
+        int bytes = utf8Length(key, length);
+        boolean ascii = bytes >= 0;
+        if (!ascii) bytes = -bytes;
+        long h = SEED ^ (bytes * M);
 
-        long m = 0xc6a4a7935bd1e995L;
-        int r = 47;
+        if (ascii) {
+            // 纯ASCII，每个字符就是一个字节，按8个字符一组直接拼成long
+            int i = 0;
+            for (; i + 8 <= length; i += 8) {
+                long k = key.charAt(i) | (long) key.charAt(i + 1) << 8 | (long) key.charAt(i + 2) << 16
+                        | (long) key.charAt(i + 3) << 24 | (long) key.charAt(i + 4) << 32
+                        | (long) key.charAt(i + 5) << 40 | (long) key.charAt(i + 6) << 48
+                        | (long) key.charAt(i + 7) << 56;
+                h = mix(h, k);
+            }
+            if (i < length) {
+                long k = 0;
+                for (int shift = 0; i < length; i++, shift += 8) {
+                    k |= (long) key.charAt(i) << shift;
+                }
+                h ^= k;
+                h *= M;
+            }
+            return fmix(h);
+        }
 
-        long h = seed ^ (buf.remaining() * m);
+        // word是尚未混合的字节，filled是其中已填充的字节数
+        long word = 0;
+        int filled = 0;
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                word |= (long) c << (filled << 3);
+                if (++filled == 8) {
+                    h = mix(h, word);
+                    word = 0;
+                    filled = 0;
+                }
+                continue;
+            }
+            // 非ASCII字符展开成2~4个字节，unit按小端序保存，count为字节数
+            int unit, count;
+            if (c < 0x800) {
+                unit = (0xc0 | (c >> 6)) | (0x80 | (c & 0x3f)) << 8;
+                count = 2;
+            } else if (Character.isSurrogate(c)) {
+                char low;
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(low = key.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, low);
+                    i++;
+                    unit = (0xf0 | (cp >> 18)) | (0x80 | ((cp >> 12) & 0x3f)) << 8
+                            | (0x80 | ((cp >> 6) & 0x3f)) << 16 | (0x80 | (cp & 0x3f)) << 24;
+                    count = 4;
+                } else {
+                    // 与String.getBytes一致，落单的代理字符编码为'?'
+                    unit = '?';
+                    count = 1;
+                }
+            } else {
+                unit = (0xe0 | (c >> 12)) | (0x80 | ((c >> 6) & 0x3f)) << 8 | (0x80 | (c & 0x3f)) << 16;
+                count = 3;
+            }
+            for (int b = 0; b < count; b++) {
+                word |= (long) ((unit >>> (b << 3)) & 0xff) << (filled << 3);
+                if (++filled == 8) {
+                    h = mix(h, word);
+                    word = 0;
+                    filled = 0;
+                }
+            }
+        }
+        if (filled > 0) {
+            h ^= word;
+            h *= M;
+        }
+        return fmix(h);
+    }
 
-        long k;
-        while (buf.remaining() >= 8) {
-            k = buf.getLong();
+    @Override
+    public long hashAsLong(byte[] data, int offset, int length) {
+        long h = SEED ^ (length * M);
 
-            k *= m;
-            k ^= k >>> r;
-            k *= m;
+        int end = offset + length;
+        int i = offset;
+        for (; i + 8 <= end; i += 8) {
+            h = mix(h, (long) LONG_ARRAY.get(data, i));
+        }
 
+        if (i < end) {
+            long k = 0;
+            for (int shift = 0; i < end; i++, shift += 8) {
+                k |= (data[i] & 0xffL) << shift;
+            }
             h ^= k;
-            h *= m;
+            h *= M;
+        }
+        return fmix(h);
+    }
+
+    @Override
+    public long hashAsLong(ByteBuffer buf) {
+        int end = buf.limit();
+        int i = buf.position();
+        long h = SEED ^ ((end - i) * M);
+
+        for (; i + 8 <= end; i += 8) {
+            h = mix(h, (long) LONG_BUFFER.get(buf, i));
         }
 
-        if (buf.remaining() > 0) {
-            ByteBuffer finish = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
-            finish.put(buf).rewind();
-            h ^= finish.getLong();
-            h *= m;
+        if (i < end) {
+            long k = 0;
+            for (int shift = 0; i < end; i++, shift += 8) {
+                k |= (buf.get(i) & 0xffL) << shift;
+            }
+            h ^= k;
+            h *= M;
         }
+        return fmix(h);
+    }
+
+    @Override
+    public long hashAsLong(long key) {
+        return fmix(mix(SEED ^ (8 * M), key));
+    }
+
+    private static long mix(long h, long k) {
+        k *= M;
+        k ^= k >>> R;
+        k *= M;
 
-        h ^= h >>> r;
-        h *= m;
-        h ^= h >>> r;
+        h ^= k;
+        h *= M;
+        return h;
+    }
 
-        buf.order(byteOrder);
+    private static long fmix(long h) {
+        h ^= h >>> R;
+        h *= M;
+        h ^= h >>> R;
         return h;
     }
+
+    /**
+     * 计算字符序列UTF-8编码后的字节数，全部是ASCII字符时返回字节数，否则返回字节数的相反数
+     * 落单的代理字符编码为1个字节的'?'，字节数与字符数相同，所以不能用字节数是否等于长度判断是否为纯ASCII
+     */
+    private static int utf8Length(CharSequence key, int length) {
+        int bytes = length;
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c < 0x80) continue;
+            ascii = false;
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(key.charAt(i + 1))) {
+                // 一对代理字符共4个字节
+                bytes += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            }
+        }
+        return ascii ? bytes : -bytes;
+    }
 }
@@ -1,5 +1,33 @@
 package ai.yunxi.hash;
 
+import java.nio.ByteBuffer;
+
 public interface IHashService {
-    Long hash(String key);
+
+    /**
+     * 旧接口，返回装箱的Long，仅做适配，热点路径请使用hashAsLong
+     */
+    default Long hash(String key) {
+        return hashAsLong(key);
+    }
+
+    /**
+     * 按UTF-8编码计算字符序列的hash，不产生中间的byte[]
+     */
+    long hashAsLong(CharSequence key);
+
+    /**
+     * 计算data[offset, offset + length)的hash
+     */
+    long hashAsLong(byte[] data, int offset, int length);
+
+    /**
+     * 计算buf中position到limit之间字节的hash，堆内和堆外ByteBuffer均可，不改变buf的position
+     */
+    long hashAsLong(ByteBuffer buf);
+
+    /**
+     * 计算long按小端序展开成8个字节后的hash
+     */
+    long hashAsLong(long key);
 }
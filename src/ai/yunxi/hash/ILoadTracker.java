@@ -0,0 +1,17 @@
+package ai.yunxi.hash;
+
+/**
+ * 节点负载统计的钩子，有界负载模式下ConsistentHash据此跳过过载的节点
+ */
+public interface ILoadTracker<T> {
+
+    /**
+     * 节点当前的负载，例如已分配的key数或连接数
+     */
+    long load(T node);
+
+    /**
+     * 所有节点的负载之和
+     */
+    long totalLoad();
+}
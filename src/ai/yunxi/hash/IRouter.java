@@ -0,0 +1,15 @@
+package ai.yunxi.hash;
+
+/**
+ * 路由策略接口：根据key选出负责它的节点
+ * 实现有虚拟节点环ConsistentHash、JumpHashRouter、RendezvousRouter和MaglevRouter，
+ * 它们在内存占用、查找速度、成员变更时的迁移量以及是否支持权重上各有取舍
+ */
+public interface IRouter<T> {
+
+    /**
+     * @param key String
+     * @return 负责key的节点，没有节点时返回null
+     */
+    T get(String key);
+}
@@ -0,0 +1,81 @@
+package ai.yunxi.hash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Jump Consistent Hash
+ * 论文《A Fast, Minimal Memory, Consistent Hash Algorithm》
+ * 不需要虚拟节点，除了节点列表本身不占额外内存，查找为O(ln n)次乘法，且负载天然均衡。
+ * 桶的编号是连续的0~n-1，只有在末尾增删节点时迁移量最小(1/n)；
+ * 删除中间的节点时用最后一个节点填补它的位置，这两个桶上的key都会迁移。
+ */
+public class JumpHashRouter<T> implements IRouter<T> {
+
+    // Hash函数接口
+    private final IHashService iHashService;
+    // 节点快照，下标即桶号，修改时整体替换
+    private volatile Object[] nodes;
+
+    public JumpHashRouter(IHashService iHashService, Collection<T> nodes) {
+        this.iHashService = iHashService;
+        List<T> distinct = new ArrayList<>();
+        for (T node : nodes) {
+            if (!distinct.contains(node)) distinct.add(node);
+        }
+        this.nodes = distinct.toArray();
+    }
+
+    /**
+     * 增加节点，追加为最后一个桶
+     */
+    public synchronized void add(T node) {
+        if (indexOf(nodes, node) >= 0) return;
+        Object[] next = new Object[nodes.length + 1];
+        System.arraycopy(nodes, 0, next, 0, nodes.length);
+        next[nodes.length] = node;
+        nodes = next;
+    }
+
+    /**
+     * 删除节点，最后一个节点移到被删除节点的桶上
+     */
+    public synchronized void remove(T node) {
+        int index = indexOf(nodes, node);
+        if (index < 0) return;
+        Object[] next = new Object[nodes.length - 1];
+        System.arraycopy(nodes, 0, next, 0, next.length);
+        if (index < next.length) next[index] = nodes[next.length];
+        nodes = next;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(String key) {
+        Object[] current = nodes;
+        if (current.length == 0) return null;
+        return (T) current[jump(iHashService.hashAsLong(key), current.length)];
+    }
+
+    /**
+     * 把key映射到[0, buckets)中的一个桶
+     * 用线性同余生成器模拟key的下一次跳跃位置j，当j超出桶数时，上一次的位置b就是结果
+     */
+    public static int jump(long key, int buckets) {
+        long b = -1, j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    private static int indexOf(Object[] nodes, Object node) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i].equals(node)) return i;
+        }
+        return -1;
+    }
+}
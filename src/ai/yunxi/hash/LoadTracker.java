@@ -0,0 +1,45 @@
+package ai.yunxi.hash;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于计数的负载统计，调用方在key分配到节点后increment，释放后decrement
+ */
+public class LoadTracker<T> implements ILoadTracker<T> {
+
+    private final Map<T, LongAdder> loads = new ConcurrentHashMap<>();
+    private final LongAdder total = new LongAdder();
+
+    @Override
+    public long load(T node) {
+        LongAdder adder = loads.get(node);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    @Override
+    public long totalLoad() {
+        return total.sum();
+    }
+
+    public void increment(T node) {
+        loads.computeIfAbsent(node, k -> new LongAdder()).increment();
+        total.increment();
+    }
+
+    public void decrement(T node) {
+        LongAdder adder = loads.get(node);
+        if (adder == null) return;
+        adder.decrement();
+        total.decrement();
+    }
+
+    /**
+     * 节点下线时清除它的负载
+     */
+    public void reset(T node) {
+        LongAdder adder = loads.remove(node);
+        if (adder != null) total.add(-adder.sum());
+    }
+}
@@ -0,0 +1,130 @@
+package ai.yunxi.hash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Maglev查找表
+ * 论文《Maglev: A Fast and Reliable Software Network Load Balancer》
+ * 每个节点由offset和skip生成一个[0, M)的排列，各节点轮流按自己的排列认领表中的空位，直到表被填满。
+ * 查找只需一次取模和一次数组访问，O(1)；表大小M为质数且远大于节点数时，各节点的槽位数几乎相同。
+ * 成员变更时重建整张表，迁移量略高于1/n。
+ */
+public class MaglevRouter<T> implements IRouter<T> {
+
+    // 默认表大小，质数
+    public static final int DEFAULT_TABLE_SIZE = 65537;
+
+    // Hash函数接口
+    private final IHashService iHashService;
+    // 查找表大小，必须是质数
+    private final int tableSize;
+    // 当前查找表，修改时整体替换
+    private volatile Table table;
+
+    // lookup[i]是第i个槽位所属节点在nodes中的下标
+    private static final class Table {
+        final Object[] nodes;
+        final int[]    lookup;
+
+        Table(Object[] nodes, int[] lookup) {
+            this.nodes = nodes;
+            this.lookup = lookup;
+        }
+    }
+
+    public MaglevRouter(IHashService iHashService, Collection<T> nodes) {
+        this(iHashService, DEFAULT_TABLE_SIZE, nodes);
+    }
+
+    /**
+     * @param tableSize 查找表大小，必须是质数，建议不小于节点数的100倍
+     */
+    public MaglevRouter(IHashService iHashService, int tableSize, Collection<T> nodes) {
+        if (!isPrime(tableSize)) throw new RuntimeException("表大小必须是质数：" + tableSize);
+        this.iHashService = iHashService;
+        this.tableSize = tableSize;
+        List<Object> distinct = new ArrayList<>();
+        for (T node : nodes) {
+            if (!distinct.contains(node)) distinct.add(node);
+        }
+        this.table = build(distinct.toArray());
+    }
+
+    public synchronized void add(T node) {
+        Object[] nodes = table.nodes;
+        if (indexOf(nodes, node) >= 0) return;
+        Object[] next = Arrays.copyOf(nodes, nodes.length + 1);
+        next[nodes.length] = node;
+        table = build(next);
+    }
+
+    public synchronized void remove(T node) {
+        Object[] nodes = table.nodes;
+        int index = indexOf(nodes, node);
+        if (index < 0) return;
+        Object[] next = new Object[nodes.length - 1];
+        System.arraycopy(nodes, 0, next, 0, index);
+        System.arraycopy(nodes, index + 1, next, index, next.length - index);
+        table = build(next);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(String key) {
+        Table current = table;
+        if (current.nodes.length == 0) return null;
+        int slot = (int) Long.remainderUnsigned(iHashService.hashAsLong(key), tableSize);
+        return (T) current.nodes[current.lookup[slot]];
+    }
+
+    // 各节点轮流按自己的排列认领空槽位，直到填满整张表
+    private Table build(Object[] nodes) {
+        int n = nodes.length;
+        int[] lookup = new int[tableSize];
+        if (n == 0) return new Table(nodes, lookup);
+
+        long[] offset = new long[n];
+        long[] skip = new long[n];
+        long[] next = new long[n];
+        for (int i = 0; i < n; i++) {
+            long h1 = iHashService.hashAsLong(nodes[i].toString());
+            long h2 = iHashService.hashAsLong(h1);
+            offset[i] = Long.remainderUnsigned(h1, tableSize);
+            skip[i] = Long.remainderUnsigned(h2, tableSize - 1) + 1;
+        }
+
+        Arrays.fill(lookup, -1);
+        int filled = 0;
+        while (true) {
+            for (int i = 0; i < n; i++) {
+                // 第next个候选槽位为(offset + next * skip) % M，M为质数保证这是一个排列
+                int c = (int) ((offset[i] + next[i] * skip[i]) % tableSize);
+                while (lookup[c] >= 0) {
+                    next[i]++;
+                    c = (int) ((offset[i] + next[i] * skip[i]) % tableSize);
+                }
+                lookup[c] = i;
+                next[i]++;
+                if (++filled == tableSize) return new Table(nodes, lookup);
+            }
+        }
+    }
+
+    private static boolean isPrime(int n) {
+        if (n < 2) return false;
+        for (int i = 2; (long) i * i <= n; i++) {
+            if (n % i == 0) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(Object[] nodes, Object node) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i].equals(node)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,52 @@
+package ai.yunxi.hash;
+
+/**
+ * 成员变更后归属发生变化的一段hash区间(from, to]
+ * from大于等于to时区间跨越了环的首尾，from等于to表示整个环
+ */
+public class MovedRange<T> {
+
+    private final long from;
+    private final long to;
+    // 变更前负责该区间的节点，变更前环为空时为null
+    private final T source;
+    // 变更后负责该区间的节点，变更后环为空时为null
+    private final T target;
+
+    public MovedRange(long from, long to, T source, T target) {
+        this.from = from;
+        this.to = to;
+        this.source = source;
+        this.target = target;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public T getSource() {
+        return source;
+    }
+
+    public T getTarget() {
+        return target;
+    }
+
+    /**
+     * 判断某个key的hash是否落在区间内
+     */
+    public boolean contains(long hash) {
+        if (from < to) return hash > from && hash <= to;
+        // 跨越首尾的区间
+        return hash > from || hash <= to;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + from + ", " + to + "] " + source + " -> " + target;
+    }
+}
@@ -0,0 +1,133 @@
+package ai.yunxi.hash;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 带权重的Rendezvous Hash(Highest Random Weight)
+ * 对每个节点计算score = -weight / ln(u)，u是key与节点组合后映射到(0, 1)的hash，取score最大的节点。
+ * 节点被选中的概率正比于权重，增删节点时只有归属于该节点的key会迁移，迁移量最小。
+ * 不需要虚拟节点，内存为O(n)，但每次查找要遍历所有节点，适合节点数不多的场景。
+ */
+public class RendezvousRouter<T> implements IRouter<T> {
+
+    // Hash函数接口
+    private final IHashService iHashService;
+    // 节点快照，修改时整体替换
+    private volatile Members members;
+
+    // 节点、节点自身的hash和权重三个平行数组
+    private static final class Members {
+        final Object[] nodes;
+        final long[]   seeds;
+        final double[] weights;
+        // 权重全部相同时score与u单调一致，可以省掉对数运算
+        final boolean  uniform;
+
+        Members(Object[] nodes, long[] seeds, double[] weights) {
+            this.nodes = nodes;
+            this.seeds = seeds;
+            this.weights = weights;
+            boolean same = true;
+            for (double weight : weights) {
+                if (weight != weights[0]) same = false;
+            }
+            this.uniform = same;
+        }
+    }
+
+    /**
+     * @param weightedNodes 节点及其权重，权重必须大于0
+     */
+    public RendezvousRouter(IHashService iHashService, Map<T, ? extends Number> weightedNodes) {
+        this.iHashService = iHashService;
+        this.members = new Members(new Object[0], new long[0], new double[0]);
+        for (Map.Entry<T, ? extends Number> entry : weightedNodes.entrySet()) {
+            add(entry.getKey(), entry.getValue().doubleValue());
+        }
+    }
+
+    public RendezvousRouter(IHashService iHashService, Iterable<T> nodes) {
+        this(iHashService, withDefaultWeight(nodes));
+    }
+
+    public synchronized void add(T node, double weight) {
+        if (weight <= 0) throw new RuntimeException("权重必须大于0：" + node);
+        Members current = members;
+        int n = current.nodes.length;
+        int index = indexOf(current.nodes, node);
+        if (index < 0) index = n++;
+        Object[] nodes = Arrays.copyOf(current.nodes, n);
+        long[] seeds = Arrays.copyOf(current.seeds, n);
+        double[] weights = Arrays.copyOf(current.weights, n);
+        nodes[index] = node;
+        seeds[index] = iHashService.hashAsLong(node.toString());
+        weights[index] = weight;
+        members = new Members(nodes, seeds, weights);
+    }
+
+    public synchronized void remove(T node) {
+        Members current = members;
+        int index = indexOf(current.nodes, node);
+        if (index < 0) return;
+        int n = current.nodes.length - 1;
+        Object[] nodes = new Object[n];
+        long[] seeds = new long[n];
+        double[] weights = new double[n];
+        for (int i = 0, j = 0; i <= n; i++) {
+            if (i == index) continue;
+            nodes[j] = current.nodes[i];
+            seeds[j] = current.seeds[i];
+            weights[j++] = current.weights[i];
+        }
+        members = new Members(nodes, seeds, weights);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(String key) {
+        Members current = members;
+        long hash = iHashService.hashAsLong(key);
+        int best = -1;
+        if (current.uniform) {
+            // 无符号比较组合hash，等价于比较u
+            long bestHash = 0;
+            for (int i = 0; i < current.nodes.length; i++) {
+                long combined = iHashService.hashAsLong(hash ^ current.seeds[i]);
+                if (best < 0 || Long.compareUnsigned(combined, bestHash) > 0) {
+                    bestHash = combined;
+                    best = i;
+                }
+            }
+            return best < 0 ? null : (T) current.nodes[best];
+        }
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < current.nodes.length; i++) {
+            // 取组合hash的高53位映射到(0, 1)，-ln(u)服从指数分布，除以它后score最大者的概率正比于权重
+            long combined = iHashService.hashAsLong(hash ^ current.seeds[i]);
+            double u = ((combined >>> 11) + 0.5) * 0x1.0p-53;
+            double score = -current.weights[i] / Math.log(u);
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best < 0 ? null : (T) current.nodes[best];
+    }
+
+    private static <T> Map<T, Double> withDefaultWeight(Iterable<T> nodes) {
+        Map<T, Double> weighted = new LinkedHashMap<>();
+        for (T node : nodes) {
+            weighted.put(node, 1.0);
+        }
+        return weighted;
+    }
+
+    private static int indexOf(Object[] nodes, Object node) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i].equals(node)) return i;
+        }
+        return -1;
+    }
+}
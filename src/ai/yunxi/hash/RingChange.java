@@ -0,0 +1,39 @@
+package ai.yunxi.hash;
+
+import java.util.List;
+
+/**
+ * 一次成员变更的结果：从哪个版本变到哪个版本，以及有哪些hash区间换了节点
+ * 调用方只需迁移落在ranges里的数据
+ */
+public class RingChange<T> {
+
+    private final long fromVersion;
+    private final long toVersion;
+    private final List<MovedRange<T>> ranges;
+
+    public RingChange(long fromVersion, long toVersion, List<MovedRange<T>> ranges) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.ranges = ranges;
+    }
+
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    public List<MovedRange<T>> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * 没有实际变更时版本号不变
+     */
+    public boolean isChanged() {
+        return fromVersion != toVersion;
+    }
+}
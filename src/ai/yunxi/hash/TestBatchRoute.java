@@ -0,0 +1,76 @@
+package ai.yunxi.hash;
+
+import java.util.*;
+
+/**
+ * 对比逐个get与批量getAll的耗时，并校验结果一致
+ */
+public class TestBatchRoute {
+
+    // 机器节点IP前缀
+    private static final String IP_PREFIX = "192.168.";
+
+    public static void main(String[] args) {
+        int nodeCount = 1000, replicas = 500;
+        IHashService iHashService = new HashService();
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add(new Node(IP_PREFIX + (i / 256) + "." + (i % 256), "node" + i));
+        }
+        ConsistentHash<Node> consistentHash = new ConsistentHash<>(iHashService, replicas, nodes);
+
+        for (int batch : new int[]{10_000, 100_000}) {
+            String[] keys = new String[batch];
+            long[] hashes = new long[batch];
+            for (int i = 0; i < batch; i++) {
+                keys[i] = UUID.randomUUID().toString();
+                hashes[i] = iHashService.hashAsLong(keys[i]);
+            }
+            Node[] single = new Node[batch];
+            Node[] batched = new Node[batch];
+            int[] nodeIdx = new int[batch];
+            long singleCost = 0, batchCost = 0, hashedCost = 0;
+            for (int round = 0; round < 20; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < batch; i++) single[i] = consistentHash.get(keys[i]);
+                singleCost = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                consistentHash.getAll(keys, batched);
+                batchCost = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                consistentHash.routeBatch(hashes, nodeIdx);
+                hashedCost = System.nanoTime() - start;
+            }
+            boolean same = Arrays.equals(single, batched);
+
+            Map<Node, int[]> grouped = consistentHash.group(keys);
+            int groupedTotal = 0;
+            for (Map.Entry<Node, int[]> entry : grouped.entrySet()) {
+                for (int i : entry.getValue()) {
+                    if (single[i] != entry.getKey()) same = false;
+                }
+                groupedTotal += entry.getValue().length;
+            }
+            System.out.println("批量" + batch + "：逐个get " + singleCost / batch + "ns/key，getAll "
+                    + batchCost / batch + "ns/key，routeBatch(已算hash) " + hashedCost / batch + "ns/key，分组"
+                    + grouped.size() + "个节点，结果一致：" + (same && groupedTotal == batch));
+        }
+
+        // 空环：get和getAll都返回null，group返回空
+        ConsistentHash<Node> empty = new ConsistentHash<>(iHashService, replicas, new ArrayList<>());
+        String[] keys = {"a", "b", "c"};
+        Node[] out = {nodes.get(0), nodes.get(1), nodes.get(2)};
+        empty.getAll(keys, out);
+        for (int i = 0; i < keys.length; i++) {
+            if (out[i] != null || empty.get(keys[i]) != null) {
+                throw new RuntimeException("空环的路由结果应为null：" + keys[i]);
+            }
+        }
+        if (!empty.group(keys).isEmpty()) {
+            throw new RuntimeException("空环的分组结果应为空");
+        }
+        System.out.println("空环：getAll、get返回null，group为空");
+    }
+}
@@ -0,0 +1,103 @@
+package ai.yunxi.hash;
+
+import java.util.*;
+
+/**
+ * 在倾斜的key分布下对比三种模式的负载均衡度和节点增删时的key迁移量
+ * 1.普通模式：所有节点权重相同
+ * 2.权重模式：后5台机器容量翻倍，权重为2
+ * 3.有界负载模式：在权重模式的基础上，跳过负载超过(1+ε)倍平均值的节点
+ */
+public class TestBoundedLoad {
+
+    // 机器节点IP前缀
+    private static final String IP_PREFIX = "192.168.0.";
+    private static final int    REPLICAS  = 100;
+    private static final double EPSILON   = 0.25;
+
+    public static void main(String[] args) {
+        IHashService iHashService = new HashService();
+
+        Map<Node, Integer> weighted = new LinkedHashMap<>();
+        for (int i = 1; i <= 10; i++) {
+            weighted.put(new Node(IP_PREFIX + i, "node" + i), i <= 5 ? 1 : 2);
+        }
+        Node joined = new Node(IP_PREFIX + 11, "node11");
+        Node left = weighted.keySet().iterator().next();
+
+        // Zipf分布的请求：第k热的key出现的概率正比于1/k
+        String[] requests = zipf(200_000, 20_000, 1.0, new Random(7));
+
+        for (int mode = 0; mode < 3; mode++) {
+            String name = mode == 0 ? "普通模式" : mode == 1 ? "权重模式" : "有界负载模式(ε=" + EPSILON + ")";
+            Map<Node, Integer> nodes = new LinkedHashMap<>();
+            for (Map.Entry<Node, Integer> entry : weighted.entrySet()) {
+                nodes.put(entry.getKey(), mode == 0 ? 1 : entry.getValue());
+            }
+            ConsistentHash<Node> consistentHash = new ConsistentHash<>(iHashService, REPLICAS, nodes);
+
+            Node[] before = route(consistentHash, requests, mode == 2);
+            System.out.println(name);
+            report(before, nodes);
+
+            consistentHash.add(joined, mode == 0 ? 1 : 2);
+            Node[] afterJoin = route(consistentHash, requests, mode == 2);
+            System.out.printf("  增加节点：迁移请求比例 %.2f%%%n", moved(before, afterJoin) * 100);
+
+            consistentHash.remove(joined);
+            consistentHash.remove(left);
+            Node[] afterLeave = route(consistentHash, requests, mode == 2);
+            System.out.printf("  删除节点：迁移请求比例 %.2f%%%n", moved(before, afterLeave) * 100);
+        }
+    }
+
+    // 按顺序路由所有请求，有界负载模式下每路由一个请求就更新一次负载
+    private static Node[] route(ConsistentHash<Node> consistentHash, String[] requests, boolean bounded) {
+        Node[] result = new Node[requests.length];
+        LoadTracker<Node> tracker = new LoadTracker<>();
+        for (int i = 0; i < requests.length; i++) {
+            result[i] = bounded ? consistentHash.get(requests[i], tracker, EPSILON) : consistentHash.get(requests[i]);
+            tracker.increment(result[i]);
+        }
+        return result;
+    }
+
+    // 打印每单位权重的负载：最大值/平均值越接近1越均衡
+    private static void report(Node[] routed, Map<Node, Integer> nodes) {
+        Map<Node, Integer> load = new HashMap<>();
+        for (Node node : routed) {
+            load.merge(node, 1, Integer::sum);
+        }
+        int totalWeight = 0;
+        for (int weight : nodes.values()) totalWeight += weight;
+        double mean = (double) routed.length / totalWeight, max = 0;
+        for (Map.Entry<Node, Integer> entry : nodes.entrySet()) {
+            double perWeight = load.getOrDefault(entry.getKey(), 0) / (double) entry.getValue();
+            max = Math.max(max, perWeight);
+        }
+        System.out.printf("  单位权重负载：平均 %.0f，最大 %.0f，最大/平均 %.3f%n", mean, max, max / mean);
+    }
+
+    private static double moved(Node[] before, Node[] after) {
+        int count = 0;
+        for (int i = 0; i < before.length; i++) {
+            if (before[i] != after[i]) count++;
+        }
+        return (double) count / before.length;
+    }
+
+    private static String[] zipf(int n, int distinct, double s, Random random) {
+        double[] cdf = new double[distinct];
+        double sum = 0;
+        for (int k = 0; k < distinct; k++) {
+            sum += 1 / Math.pow(k + 1, s);
+            cdf[k] = sum;
+        }
+        String[] keys = new String[n];
+        for (int i = 0; i < n; i++) {
+            int k = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            keys[i] = "key" + (k < 0 ? -k - 1 : k);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,98 @@
+package ai.yunxi.hash;
+
+import java.util.Random;
+
+/**
+ * 对比分块布隆过滤器和布谷鸟过滤器的误判率、每个key的字节数和插入、查询耗时
+ * 耗时只统计过滤器本身，key的hash预先算好
+ */
+public class TestFilters {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        IHashService iHashService = new HashService();
+        Random random = new Random(7);
+        // 前n个插入，后n个用于统计误判
+        long[] hashes = new long[2 * n];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = iHashService.hashAsLong("key-" + random.nextLong());
+        }
+
+        System.out.printf("%-28s %10s %10s %12s %12s%n", "过滤器", "误判率", "字节/key", "插入ns/op", "查询ns/op");
+        for (double fpp : new double[]{0.01, 0.001}) {
+            BlockedBloomFilter bloom = null;
+            long putCost = 0, getCost = 0;
+            int falsePositive = 0;
+            // 预热后取最后一轮
+            for (int round = 0; round < 3; round++) {
+                bloom = new BlockedBloomFilter(iHashService, n, fpp);
+                long start = System.nanoTime();
+                for (int i = 0; i < n; i++) bloom.putHashed(hashes[i]);
+                putCost = System.nanoTime() - start;
+                falsePositive = 0;
+                start = System.nanoTime();
+                for (int i = n; i < 2 * n; i++) {
+                    if (bloom.mightContainHashed(hashes[i])) falsePositive++;
+                }
+                getCost = System.nanoTime() - start;
+            }
+            System.out.printf("%-28s %10.5f %10.2f %12.1f %12.1f%n", "BlockedBloomFilter(" + fpp + ")",
+                    (double) falsePositive / n, (double) bloom.sizeInBytes() / n, (double) putCost / n, (double) getCost / n);
+        }
+
+        CuckooFilter cuckoo = null;
+        long putCost = 0, getCost = 0;
+        int falsePositive = 0;
+        for (int round = 0; round < 3; round++) {
+            cuckoo = new CuckooFilter(iHashService, n);
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                if (!cuckoo.putHashed(hashes[i])) throw new RuntimeException("过滤器已满：" + i);
+            }
+            putCost = System.nanoTime() - start;
+            falsePositive = 0;
+            start = System.nanoTime();
+            for (int i = n; i < 2 * n; i++) {
+                if (cuckoo.mightContainHashed(hashes[i])) falsePositive++;
+            }
+            getCost = System.nanoTime() - start;
+        }
+        System.out.printf("%-28s %10.5f %10.2f %12.1f %12.1f%n", "CuckooFilter",
+                (double) falsePositive / n, (double) cuckoo.sizeInBytes() / n, (double) putCost / n, (double) getCost / n);
+        System.out.printf("布谷鸟过滤器装载率：%.3f%n", cuckoo.loadFactor());
+
+        // 删除一半后，剩下的一半不能漏判
+        for (int i = 0; i < n / 2; i++) {
+            if (!cuckoo.deleteHashed(hashes[i])) throw new RuntimeException("删除失败：" + i);
+        }
+        int missing = 0, stillPresent = 0;
+        for (int i = 0; i < n; i++) {
+            boolean present = cuckoo.mightContainHashed(hashes[i]);
+            if (i >= n / 2 && !present) missing++;
+            if (i < n / 2 && present) stillPresent++;
+        }
+        System.out.println("删除一半后：漏判" + missing + "个，已删除仍命中" + stillPresent + "个(由误判导致)，剩余" + cuckoo.size());
+
+        // 合并与序列化，合并后两边的key都能查到
+        int half = n / 2;
+        BlockedBloomFilter left = new BlockedBloomFilter(iHashService, n, 0.01);
+        BlockedBloomFilter right = new BlockedBloomFilter(iHashService, n, 0.01);
+        CuckooFilter cuckooLeft = new CuckooFilter(iHashService, n);
+        CuckooFilter cuckooRight = new CuckooFilter(iHashService, n);
+        for (int i = 0; i < n; i++) {
+            (i < half ? left : right).putHashed(hashes[i]);
+            (i < half ? cuckooLeft : cuckooRight).putHashed(hashes[i]);
+        }
+        left.merge(right);
+        if (!cuckooLeft.merge(cuckooRight)) throw new RuntimeException("合并时过滤器已满");
+        BlockedBloomFilter bloomCopy = BlockedBloomFilter.build(iHashService, left.getBytes());
+        CuckooFilter cuckooCopy = CuckooFilter.build(iHashService, cuckooLeft.getBytes());
+        int bloomMissing = 0, cuckooMissing = 0;
+        for (int i = 0; i < n; i++) {
+            if (!bloomCopy.mightContainHashed(hashes[i])) bloomMissing++;
+            if (!cuckooCopy.mightContainHashed(hashes[i])) cuckooMissing++;
+        }
+        System.out.println("合并并序列化后：布隆漏判" + bloomMissing + "个，布谷鸟漏判" + cuckooMissing
+                + "个，布谷鸟数量" + cuckooCopy.size() + "，理论误判率" + String.format("%.5f", bloomCopy.expectedFpp()));
+    }
+}
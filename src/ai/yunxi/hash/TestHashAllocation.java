@@ -0,0 +1,82 @@
+package ai.yunxi.hash;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 校验hashAsLong各个重载的结果一致，并统计每次hash分配的字节数和耗时
+ */
+public class TestHashAllocation {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        IHashService iHashService = new HashService();
+
+        // 各个重载对同一份字节应得到同样的hash
+        String[] samples = {"", "a", "192.168.0.1", "一致性哈希", "emoji😀", "bad\uD800surrogate",
+                "ab\uD800cd", "\uDC00", "tail\uD83D", "\uDE00\uD83D", "0123456789abcdef0"};
+        for (String sample : samples) {
+            byte[] bytes = sample.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+            long expected = iHashService.hashAsLong(bytes, 0, bytes.length);
+            boolean same = expected == iHashService.hashAsLong(sample)
+                    && expected == iHashService.hashAsLong(new StringBuilder(sample))
+                    && expected == iHashService.hashAsLong(ByteBuffer.wrap(bytes))
+                    && expected == iHashService.hashAsLong(direct)
+                    && expected == iHashService.hash(sample);
+            if (!same) {
+                throw new RuntimeException("hashAsLong各重载结果不一致：" + sample);
+            }
+            System.out.println(sample + " -> " + expected);
+        }
+        byte[] eight = ByteBuffer.allocate(8).order(java.nio.ByteOrder.LITTLE_ENDIAN).putLong(42L).array();
+        if (iHashService.hashAsLong(42L) != iHashService.hashAsLong(eight, 0, 8)) {
+            throw new RuntimeException("hashAsLong(long)与8字节小端序的结果不一致");
+        }
+
+        int n = 10_000_000;
+        String key = "192.168.0.1#user:123456";
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+
+        for (int round = 0; round < 3; round++) {
+            long sink = 0;
+
+            long allocated = THREAD_MX.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) sink += iHashService.hash(key);
+            report("hash(String)", start, allocated, n);
+
+            allocated = THREAD_MX.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) sink += iHashService.hashAsLong(key);
+            report("hashAsLong(CharSequence)", start, allocated, n);
+
+            allocated = THREAD_MX.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) sink += iHashService.hashAsLong(bytes, 0, bytes.length);
+            report("hashAsLong(byte[])", start, allocated, n);
+
+            allocated = THREAD_MX.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) sink += iHashService.hashAsLong(direct);
+            report("hashAsLong(direct ByteBuffer)", start, allocated, n);
+
+            allocated = THREAD_MX.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) sink += iHashService.hashAsLong((long) i);
+            report("hashAsLong(long)", start, allocated, n);
+
+            System.out.println("sink=" + sink);
+        }
+    }
+
+    private static void report(String name, long start, long allocated, int n) {
+        long cost = System.nanoTime() - start;
+        long bytes = THREAD_MX.getCurrentThreadAllocatedBytes() - allocated;
+        System.out.printf("%-30s %6.1f ns/op %8.2f B/op%n", name, (double) cost / n, (double) bytes / n);
+    }
+}
@@ -0,0 +1,97 @@
+package ai.yunxi.hash;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 校验成员变更返回的迁移区间，并在读写并发下检查get不出错
+ */
+public class TestRingChange {
+
+    // 机器节点IP前缀
+    private static final String IP_PREFIX = "192.168.0.";
+
+    public static void main(String[] args) throws InterruptedException {
+        IHashService iHashService = new HashService();
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            nodes.add(new Node(IP_PREFIX + i, "node" + i));
+        }
+        ConsistentHash<Node> consistentHash = new ConsistentHash<>(iHashService, 200, nodes);
+
+        String[] keys = new String[100_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = UUID.randomUUID().toString();
+        }
+
+        // 单节点增加、单节点删除、批量增删，逐个校验迁移区间
+        List<Node> extra = Arrays.asList(new Node(IP_PREFIX + 11, "node11"), new Node(IP_PREFIX + 12, "node12"));
+        check(consistentHash, iHashService, keys, "增加node11", () -> consistentHash.add(extra.get(0)));
+        check(consistentHash, iHashService, keys, "删除node1", () -> consistentHash.remove(nodes.get(0)));
+        check(consistentHash, iHashService, keys, "批量增删",
+                () -> consistentHash.update(Collections.singletonList(extra.get(1)), Arrays.asList(nodes.get(1), nodes.get(2))));
+        check(consistentHash, iHashService, keys, "重复增加", () -> consistentHash.add(extra.get(1)));
+
+        // 4个读线程不停get，2个写线程不停增删，读到null或异常即为错误
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong lookups = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                long count = 0;
+                while (running.get()) {
+                    if (consistentHash.get(keys[(int) (count % keys.length)]) == null) errors.incrementAndGet();
+                    count++;
+                }
+                lookups.addAndGet(count);
+            }));
+        }
+        for (int t = 0; t < 2; t++) {
+            Node node = extra.get(t);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    consistentHash.remove(node);
+                    consistentHash.add(node);
+                }
+            }));
+        }
+        long version = consistentHash.version();
+        for (int t = 4; t < threads.size(); t++) threads.get(t).start();
+        for (int t = 0; t < 4; t++) threads.get(t).start();
+        for (int t = 4; t < threads.size(); t++) threads.get(t).join();
+        running.set(false);
+        for (int t = 0; t < 4; t++) threads.get(t).join();
+        System.out.println("并发读次数：" + lookups.get() + "，错误：" + errors.get()
+                + "，版本号增加：" + (consistentHash.version() - version));
+    }
+
+    private static void check(ConsistentHash<Node> consistentHash, IHashService iHashService, String[] keys,
+                              String name, java.util.function.Supplier<RingChange<Node>> action) {
+        Node[] before = new Node[keys.length];
+        for (int i = 0; i < keys.length; i++) before[i] = consistentHash.get(keys[i]);
+        RingChange<Node> change = action.get();
+
+        int moved = 0, wrong = 0;
+        for (int i = 0; i < keys.length; i++) {
+            Node after = consistentHash.get(keys[i]);
+            long hash = iHashService.hashAsLong(keys[i]);
+            MovedRange<Node> range = null;
+            for (MovedRange<Node> r : change.getRanges()) {
+                if (r.contains(hash)) {
+                    range = r;
+                    break;
+                }
+            }
+            if (after != before[i]) {
+                moved++;
+                if (range == null || range.getSource() != before[i] || range.getTarget() != after) wrong++;
+            } else if (range != null) {
+                wrong++;
+            }
+        }
+        System.out.println(name + "：版本" + change.getFromVersion() + "->" + change.getToVersion()
+                + "，迁移区间" + change.getRanges().size() + "个，迁移key" + moved + "个，区间不符" + wrong + "个");
+    }
+}
@@ -0,0 +1,66 @@
+package ai.yunxi.hash;
+
+import java.util.*;
+
+/**
+ * 对比TreeMap实现与数组快照实现的get耗时
+ */
+public class TestRingLookup {
+
+    // 机器节点IP前缀
+    private static final String IP_PREFIX = "192.168.";
+
+    public static void main(String[] args) {
+        int nodeCount = 1000, replicas = 500, keyCount = 1_000_000;
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add(new Node(IP_PREFIX + (i / 256) + "." + (i % 256), "node" + i));
+        }
+        IHashService iHashService = new HashService();
+
+        // 原来的TreeMap环
+        TreeMap<Long, Node> circle = new TreeMap<>();
+        for (Node node : nodes) {
+            for (int i = 0; i < replicas; i++) {
+                circle.put(iHashService.hash(node.toString() + i), node);
+            }
+        }
+        long start = System.nanoTime();
+        ConsistentHash<Node> consistentHash = new ConsistentHash<>(iHashService, replicas, nodes);
+        System.out.println("建环耗时：" + (System.nanoTime() - start) / 1_000_000 + "ms");
+
+        String[] keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = UUID.randomUUID().toString();
+        }
+
+        for (int round = 0; round < 5; round++) {
+            int mismatch = 0;
+            start = System.nanoTime();
+            Node[] expected = new Node[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                long hash = iHashService.hash(keys[i]);
+                if (!circle.containsKey(hash)) {
+                    SortedMap<Long, Node> tailMap = circle.tailMap(hash);
+                    hash = tailMap.isEmpty() ? circle.firstKey() : tailMap.firstKey();
+                }
+                expected[i] = circle.get(hash);
+            }
+            long treeMapCost = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Node[] actual = new Node[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                actual[i] = consistentHash.get(keys[i]);
+            }
+            long ringCost = System.nanoTime() - start;
+
+            for (int i = 0; i < keyCount; i++) {
+                if (expected[i] != actual[i]) mismatch++;
+            }
+            System.out.println("第" + round + "轮 TreeMap：" + treeMapCost / keyCount + "ns/op，数组快照："
+                    + ringCost / keyCount + "ns/op，结果不一致：" + mismatch);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ai.yunxi.hash;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 对比各路由策略的查找耗时、内存占用、负载均衡度和增加一个节点时的key迁移比例
+ * 理想的迁移比例为1/(n+1)
+ */
+public class TestRouters {
+
+    // 机器节点IP前缀
+    private static final String IP_PREFIX = "192.168.";
+
+    public static void main(String[] args) {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int keyCount = 200_000;
+        IHashService iHashService = new HashService();
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i <= nodeCount; i++) {
+            nodes.add(new Node(IP_PREFIX + (i / 256) + "." + (i % 256), "node" + i));
+        }
+        // 最后一个节点用于测试迁移
+        List<Node> before = nodes.subList(0, nodeCount);
+        String[] keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = UUID.randomUUID().toString();
+        }
+
+        Map<String, Function<List<Node>, IRouter<Node>>> strategies = new LinkedHashMap<>();
+        strategies.put("ConsistentHash(100副本)", list -> new ConsistentHash<>(iHashService, 100, list));
+        strategies.put("ConsistentHash(500副本)", list -> new ConsistentHash<>(iHashService, 500, list));
+        strategies.put("JumpHashRouter", list -> new JumpHashRouter<>(iHashService, list));
+        strategies.put("RendezvousRouter", list -> new RendezvousRouter<>(iHashService, list));
+        strategies.put("MaglevRouter(100003)", list -> new MaglevRouter<>(iHashService, 100003, list));
+
+        System.out.printf("%-24s %10s %10s %12s %10s%n", "策略", "ns/op", "内存(KB)", "最大/平均", "迁移比例");
+        for (Map.Entry<String, Function<List<Node>, IRouter<Node>>> entry : strategies.entrySet()) {
+            long memory = usedMemory();
+            IRouter<Node> router = entry.getValue().apply(before);
+            memory = usedMemory() - memory;
+
+            // 预热后取最后一轮
+            Node[] routed = new Node[keyCount];
+            long cost = 0;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < keyCount; i++) {
+                    routed[i] = router.get(keys[i]);
+                }
+                cost = System.nanoTime() - start;
+            }
+
+            Map<Node, Integer> load = new HashMap<>();
+            for (Node node : routed) load.merge(node, 1, Integer::sum);
+            int max = 0;
+            for (int count : load.values()) max = Math.max(max, count);
+
+            IRouter<Node> after = entry.getValue().apply(nodes);
+            int moved = 0;
+            for (int i = 0; i < keyCount; i++) {
+                if (after.get(keys[i]) != routed[i]) moved++;
+            }
+
+            System.out.printf("%-24s %10d %10d %12.3f %9.3f%%%n", entry.getKey(), cost / keyCount, memory / 1024,
+                    max / ((double) keyCount / nodeCount), moved * 100.0 / keyCount);
+        }
+        System.out.printf("理想迁移比例：%.3f%%%n", 100.0 / (nodeCount + 1));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,202 @@
+package ai.yunxi.hyperLog;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count-Min Sketch，估算数据流中每个元素出现的次数
+ * 来源于论文《An Improved Data Stream Summary: The Count-Min Sketch and its Applications》
+ * depth行、每行width个计数器，元素在每行各映射到一个计数器，估算值取这depth个计数器的最小值。
+ * 估算值只会偏大不会偏小，以1-delta的概率误差不超过epsilon * 总次数，其中width = e / epsilon，depth = ln(1 / delta)。
+ * <p>
+ * 采用保守更新(conservative update)：增加count时只把小于(最小值 + count)的计数器抬到这个值，
+ * 其余计数器不动，能明显减小高频元素对低频元素的干扰。
+ * 计数器通过CAS更新，多个线程可以同时add，并发时估算值同样不会偏小，见addHashed。
+ */
+public class CountMinSketch {
+
+    // 序列化格式的版本号
+    private static final byte SERIAL_VERSION = 1;
+    // 对table中的long做volatile读和CAS
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int depth;
+    private final int width;   //2的幂，用位运算代替取模
+    private final int seed;
+    // depth * width个计数器，第i行从i * width开始
+    private final long[] table;
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * @param epsilon 误差上限占总次数的比例
+     * @param delta   超出误差上限的概率
+     */
+    public CountMinSketch(double epsilon, double delta) {
+        this((int) Math.ceil(Math.log(1 / delta)), (int) Math.ceil(Math.E / epsilon), -1);
+    }
+
+    /**
+     * @param depth 行数
+     * @param width 每行的计数器数量，向上取整为2的幂
+     * @param seed  hash种子，合并的两个sketch必须相同
+     */
+    public CountMinSketch(int depth, int width, int seed) {
+        this(depth, width, seed, null);
+    }
+
+    private CountMinSketch(int depth, int width, int seed, long[] table) {
+        if (depth < 1 || width < 1) {
+            throw new RuntimeException("depth和width必须大于0");
+        }
+        this.depth = depth;
+        this.width = Integer.highestOneBit(width) == width ? width : Integer.highestOneBit(width) << 1;
+        this.seed = seed;
+        this.table = table == null ? new long[depth * this.width] : table;
+    }
+
+    /**
+     * 元素的64位hash，与HyperLogLog++使用同一个MurmurHash
+     */
+    public long hashOf(Object o) {
+        if (o instanceof byte[]) {
+            byte[] bytes = (byte[]) o;
+            return MurmurHash.hash64(bytes, bytes.length, seed);
+        }
+        return MurmurHash.hash3Long(MurmurHash.hash64(o), seed);
+    }
+
+    public void add(Object o) {
+        addHashed(hashOf(o), 1);
+    }
+
+    public void add(Object o, long count) {
+        addHashed(hashOf(o), count);
+    }
+
+    /**
+     * 批量添加，每个元素计1次
+     */
+    public void addAll(Object[] items) {
+        for (Object item : items) {
+            addHashed(hashOf(item), 1);
+        }
+    }
+
+    /**
+     * 批量添加已经算好hash的元素，可以和HyperLogLog++共用同一次hash
+     */
+    public void addAllHashed(long[] hashes) {
+        for (long hash : hashes) {
+            addHashed(hash, 1);
+        }
+    }
+
+    /**
+     * 保守更新：先读出depth个计数器并求出最小值min，再把小于min + count的计数器抬到min + count
+     * 第i行的下标为h1 + i * h2(Kirsch-Mitzenmacher双重hash)，一次64位hash即可得到所有行的下标
+     * <p>
+     * 并发时每个计数器都以读出时的值为期望值做CAS，任何一个CAS失败都说明有其他线程改过，
+     * 重新读取最小值后整体重试。否则两个线程读到同一个最小值时会抬到同一个目标值，丢失一次增加；
+     * 成功时最小值所在的计数器正好从min变为min + count，增加不会丢失。
+     * 失败前已经抬高的计数器不回退，计数器只增不减，只可能让估算值偏大。
+     */
+    public void addHashed(long hash, long count) {
+        if (count < 0) {
+            throw new RuntimeException("保守更新不支持负数：" + count);
+        }
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long[] seen = new long[depth];
+        retry:
+        while (true) {
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < depth; i++) {
+                seen[i] = (long) CELLS.getVolatile(table, index(i, h1, h2));
+                min = Math.min(min, seen[i]);
+            }
+            long target = min + count;
+            for (int i = 0; i < depth; i++) {
+                if (seen[i] < target && !CELLS.compareAndSet(table, index(i, h1, h2), seen[i], target)) {
+                    continue retry;
+                }
+            }
+            break;
+        }
+        size.addAndGet(count);
+    }
+
+    public long estimate(Object o) {
+        return estimateHashed(hashOf(o));
+    }
+
+    public long estimateHashed(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, (long) CELLS.getVolatile(table, index(i, h1, h2)));
+        }
+        return min;
+    }
+
+    private int index(int row, int h1, int h2) {
+        int combined = h1 + row * h2;
+        return row * width + (combined & (width - 1));
+    }
+
+    /**
+     * 所有add的count之和
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * 合并另一个同样大小、同样种子的sketch，计数器逐个相加
+     * 保守更新的sketch相加后估算值仍然只会偏大
+     */
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width || other.seed != seed) {
+            throw new RuntimeException("sketch的大小或种子不同，不能合并");
+        }
+        for (int i = 0; i < table.length; i++) {
+            long add = (long) CELLS.getVolatile(other.table, i);
+            if (add != 0) CELLS.getAndAdd(table, i, add);
+        }
+        size.addAndGet(other.size());
+    }
+
+    /**
+     * 序列化格式：1字节版本号 + depth + width + seed + size + 所有计数器(大端序)
+     */
+    public byte[] getBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(1 + 3 * Integer.BYTES + Long.BYTES + table.length * Long.BYTES);
+        buf.put(SERIAL_VERSION).putInt(depth).putInt(width).putInt(seed).putLong(size.get());
+        for (int i = 0; i < table.length; i++) {
+            buf.putLong((long) CELLS.getVolatile(table, i));
+        }
+        return buf.array();
+    }
+
+    public static CountMinSketch build(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        byte version = buf.get();
+        if (version != SERIAL_VERSION) {
+            throw new RuntimeException("不支持的序列化版本：" + version);
+        }
+        int depth = buf.getInt(), width = buf.getInt(), seed = buf.getInt();
+        long size = buf.getLong();
+        if (buf.remaining() != (long) depth * width * Long.BYTES) {
+            throw new RuntimeException("数据长度与depth、width不符：" + bytes.length);
+        }
+        long[] table = new long[depth * width];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = buf.getLong();
+        }
+        CountMinSketch sketch = new CountMinSketch(depth, width, seed, table);
+        sketch.size.set(size);
+        return sketch;
+    }
+}
@@ -1,5 +1,8 @@
 package ai.yunxi.hyperLog;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * HyperLogLog算法经常在数据库中被用来统计某一字段的Distinct Value（简称DV）
  * HyperLogLog算法来源于论文《HyperLogLog the analysis of a near-optimal cardinality estimation algorithm》
@@ -10,9 +13,34 @@ package ai.yunxi.hyperLog;
  */
 public class HyperLogLog {
 
+    // 序列化格式的版本号
+    private static final byte SERIAL_VERSION = 1;
+    // INVERSE_POWERS[k] = 1 / 2^k，register最大为31
+    private static final double[] INVERSE_POWERS = new double[1 << RegisterSet.REGISTER_SIZE];
+
+    static {
+        for (int k = 0; k < INVERSE_POWERS.length; k++) {
+            INVERSE_POWERS[k] = Math.scalb(1.0, -k);
+        }
+    }
+
     private final RegisterSet registerSet;
     private final int log2m;   //log(m)
     private final double alphaMM;
+    // 为true时offer可以被多个线程同时调用
+    private final boolean concurrent;
+
+    // 非并发模式下在offerHashed中增量维护的调和和与值为0的register个数
+    // 每一项都是2的负整数次幂，和不超过2^18，double可以精确表示，不会累积误差
+    private double registerSum;
+    private int zeros;
+    // 缓存的基数，register变化时置为-1
+    private long cached = -1;
+
+    // 并发模式下register每次实际变化时加1
+    private final AtomicLong modCount;
+    // 并发模式下缓存的{modCount, 基数}，modCount不变时直接返回
+    private volatile long[] concurrentCache;
 
     /**
      * rsd = 1.106/sqrt(m)
@@ -33,11 +61,22 @@ public class HyperLogLog {
     }
 
     public HyperLogLog(int log2m, RegisterSet registerSet) {
+        this(log2m, registerSet, false);
+    }
+
+    /**
+     * @param concurrent 为true时register通过CAS更新，多个线程可以同时offer同一个sketch；
+     *                   cardinality读到的是调用时刻附近的register，不阻塞写线程
+     */
+    public HyperLogLog(int log2m, RegisterSet registerSet, boolean concurrent) {
         this.registerSet = registerSet;
+        this.concurrent = concurrent;
         this.log2m = log2m;
         int m = 1 << this.log2m; //从log2m中算出m
 
         alphaMM = getAlphaMM(log2m, m);
+        modCount = concurrent ? new AtomicLong() : null;
+        recount();
     }
 
     /**
@@ -61,7 +100,25 @@ public class HyperLogLog {
         final int j = hashedValue >>> (Integer.SIZE - log2m);
         // r代表 除去前log2m位剩下部分的前导零 + 1
         final int r = Integer.numberOfLeadingZeros((hashedValue << this.log2m) | (1 << (this.log2m - 1)) + 1) + 1;
-        return registerSet.updateIfGreater(j, r);
+        if (concurrent) {
+            if (registerSet.updateIfGreaterConcurrent(j, r)) {
+                modCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+        int old = registerSet.get(j);
+        if (r <= old) {
+            return false;
+        }
+        registerSet.updateIfGreater(j, r);
+        // 只有register真正变大时才更新调和和并让缓存失效
+        registerSum += INVERSE_POWERS[r] - INVERSE_POWERS[old];
+        if (old == 0) {
+            zeros--;
+        }
+        cached = -1;
+        return true;
     }
 
     /**
@@ -74,19 +131,61 @@ public class HyperLogLog {
         return offerHashed(x);
     }
 
+    /**
+     * 非并发模式下O(1)：直接使用增量维护的调和和，结果缓存到register下一次变化为止
+     * 并发模式下register没有变化时返回缓存，否则重新扫描一遍register
+     */
     public long cardinality() {
-        double registerSum = 0;
-        int count = registerSet.count;
-        double zeros = 0.0;
+        if (concurrent) {
+            // 先读modCount再扫描，扫描期间的写入会让这份缓存在下次调用时失效
+            long version = modCount.get();
+            long[] cache = concurrentCache;
+            if (cache != null && cache[0] == version) {
+                return cache[1];
+            }
+            long result = scan();
+            concurrentCache = new long[]{version, result};
+            return result;
+        }
+        if (cached < 0) {
+            cached = estimate(registerSum, zeros);
+        }
+        return cached;
+    }
+
+    // 扫描所有register计算基数，不修改增量维护的字段
+    private long scan() {
+        double sum = 0;
+        int zeroCount = 0;
         //count是桶的数量
         for (int j = 0; j < registerSet.count; j++) {
             int val = registerSet.get(j);
-            registerSum += 1.0 / (1 << val);
+            sum += INVERSE_POWERS[val];
             if (val == 0) {
-                zeros++;
+                zeroCount++;
             }
         }
+        return estimate(sum, zeroCount);
+    }
 
+    // 重新统计调和和与0的个数，用于构造和合并之后
+    private void recount() {
+        double sum = 0;
+        int zeroCount = 0;
+        for (int j = 0; j < registerSet.count; j++) {
+            int val = registerSet.get(j);
+            sum += INVERSE_POWERS[val];
+            if (val == 0) {
+                zeroCount++;
+            }
+        }
+        registerSum = sum;
+        zeros = zeroCount;
+        cached = -1;
+    }
+
+    private long estimate(double registerSum, int zeros) {
+        int count = registerSet.count;
         double estimate = alphaMM * (1 / registerSum);
 
         if (estimate <= (5.0 / 2.0) * count) {  //小数据量修正
@@ -97,6 +196,96 @@ public class HyperLogLog {
     }
 
 
+    /**
+     * 创建一个线程安全的sketch，适合多个写线程共用一个sketch
+     *
+     * @param log2m m的log值
+     */
+    public static HyperLogLog concurrent(int log2m) {
+        return new HyperLogLog(log2m, new RegisterSet(1 << log2m), true);
+    }
+
+    public int getLog2m() {
+        return log2m;
+    }
+
+    /**
+     * 把other合并进当前sketch，相当于当前sketch也见过other的所有元素
+     * 两者的log2m必须相同
+     */
+    public void addAll(HyperLogLog other) {
+        if (other.log2m != this.log2m) {
+            throw new RuntimeException("log2m不同，不能合并：" + this.log2m + " != " + other.log2m);
+        }
+        if (concurrent) {
+            // 逐个register做CAS，与并发的offer互不覆盖
+            for (int j = 0; j < registerSet.count; j++) {
+                int val = other.registerSet.get(j);
+                if (val > 0 && registerSet.updateIfGreaterConcurrent(j, val)) {
+                    modCount.incrementAndGet();
+                }
+            }
+        } else {
+            registerSet.merge(other.registerSet);
+            recount();
+        }
+    }
+
+    /**
+     * 返回当前sketch与others的并集，不修改任何一个输入
+     */
+    public HyperLogLog merge(HyperLogLog... others) {
+        HyperLogLog merged = new HyperLogLog(log2m, new RegisterSet(1 << log2m, registerSet.bits()));
+        for (HyperLogLog other : others) {
+            merged.addAll(other);
+        }
+        return merged;
+    }
+
+    /**
+     * 用容斥原理估算交集基数：|A∩B| = |A| + |B| - |A∪B|
+     * 误差来自三次估算，交集相对并集越小，相对误差越大
+     */
+    public static long intersection(HyperLogLog a, HyperLogLog b) {
+        long union = a.merge(b).cardinality();
+        return Math.max(0, a.cardinality() + b.cardinality() - union);
+    }
+
+    /**
+     * 序列化格式：1字节版本号 + 1字节log2m + RegisterSet.M的所有int(大端序)
+     * M中每个int打包了6个5位的register
+     */
+    public byte[] getBytes() {
+        int[] bits = registerSet.readOnlyBits();
+        ByteBuffer buf = ByteBuffer.allocate(2 + bits.length * Integer.BYTES);
+        buf.put(SERIAL_VERSION).put((byte) log2m);
+        for (int word : bits) {
+            buf.putInt(word);
+        }
+        return buf.array();
+    }
+
+    /**
+     * 从getBytes的结果还原sketch
+     */
+    public static HyperLogLog build(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        byte version = buf.get();
+        if (version != SERIAL_VERSION) {
+            throw new RuntimeException("不支持的序列化版本：" + version);
+        }
+        int log2m = buf.get();
+        int count = 1 << log2m;
+        int[] bits = new int[RegisterSet.getSizeForCount(count)];
+        if (buf.remaining() != bits.length * Integer.BYTES) {
+            throw new RuntimeException("数据长度与log2m不符：" + bytes.length);
+        }
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = buf.getInt();
+        }
+        return new HyperLogLog(log2m, new RegisterSet(count, bits));
+    }
+
     /**
      * 计算constant常数的取值
      *
@@ -133,5 +322,44 @@ public class HyperLogLog {
         System.out.println(hyperLogLog.offer("mmm"));
         //估算基数
         System.out.println(hyperLogLog.cardinality());
+
+        //4个分区并行构建sketch，查询时再合并：分区i包含[i*250000, i*250000+400000)，相邻分区有重叠
+        HyperLogLog[] partitions = new HyperLogLog[4];
+        java.util.stream.IntStream.range(0, 4).parallel().forEach(i -> {
+            HyperLogLog sketch = new HyperLogLog(14);
+            for (int v = i * 250000; v < i * 250000 + 400000; v++) {
+                sketch.offer(v);
+            }
+            //序列化后再还原，模拟跨进程传输
+            partitions[i] = build(sketch.getBytes());
+        });
+        HyperLogLog union = partitions[0].merge(partitions[1], partitions[2], partitions[3]);
+        System.out.println("并集估算：" + union.cardinality() + "，真实值：1150000");
+        System.out.println("交集估算：" + intersection(partitions[0], partitions[1]) + "，真实值：150000");
+
+        //2^16个桶的sketch上边写入边轮询基数，增量维护与全量扫描的结果应完全一致
+        HyperLogLog polled = new HyperLogLog(16);
+        int polls = 0, mismatch = 0;
+        long start = System.nanoTime();
+        for (int v = 0; v < 2_000_000; v++) {
+            polled.offer(v);
+            if (v % 2000 == 0) {
+                polls++;
+                if (polled.cardinality() != polled.scan()) mismatch++;
+            }
+        }
+        System.out.println("边写边查" + polls + "次，与全量扫描不一致：" + mismatch + "次，耗时"
+                + (System.nanoTime() - start) / 1_000_000 + "ms");
+        start = System.nanoTime();
+        long sink = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            sink += polled.cardinality();
+        }
+        System.out.println("缓存命中时cardinality：" + (System.nanoTime() - start) / 1_000_000 + "ns/op，" + sink);
+        start = System.nanoTime();
+        for (int i = 0; i < 1_000; i++) {
+            sink += polled.scan();
+        }
+        System.out.println("全量扫描：" + (System.nanoTime() - start) / 1_000 + "ns/op，" + sink);
     }
 }
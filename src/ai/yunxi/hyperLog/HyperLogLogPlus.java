@@ -0,0 +1,319 @@
+package ai.yunxi.hyperLog;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog++
+ * 来源于论文《HyperLogLog in Practice: Algorithmic Engineering of a State of The Art Cardinality Estimation Algorithm》
+ * 相比HyperLogLog有三处改进：
+ * 1.使用64位hash，基数超过10亿时32位hash的碰撞不再影响精度
+ * 2.基数较小时使用稀疏表示：只保存出现过的(下标, 前导零)对，按更高的精度sp编码进一个int，
+ * 升序排列后相邻编码的差值再按varint压缩进byte[]，数量少时内存远小于2^p个register；
+ * 当稀疏表示占用的内存超过稠密表示时再转换为RegisterSet
+ * 3.小基数和中等基数的偏差修正：稀疏阶段用精度为2^sp的线性计数；稠密阶段用Ertl在
+ * 《New cardinality estimation algorithms for HyperLogLog sketches》中提出的改进估算，
+ * 它直接由register的直方图求出无偏估计，效果与论文中的经验偏差表相当，但不需要为每个p维护一张表
+ */
+public class HyperLogLogPlus {
+
+    // register只有5位，前导零的个数最多记到31
+    private static final int MAX_RANK = 31;
+
+    private final int p;   //稠密表示的精度，m = 2^p
+    private final int sp;  //稀疏表示的精度
+    private final int m;
+
+    // 稀疏表示：升序且下标不重复的编码，按差值varint压缩
+    private byte[] sparseList = new byte[0];
+    // sparseList中的编码个数
+    private int sparseCount;
+    // 新插入的编码先放在这里，满了再与sparseList归并
+    private int[] tmpSet = new int[4];
+    private int tmpCount;
+    // tmpSet最多扩容到这么大
+    private final int tmpLimit;
+
+    // 稠密表示，转换前为null
+    private RegisterSet registerSet;
+
+    public HyperLogLogPlus(int p) {
+        this(p, 25);
+    }
+
+    /**
+     * @param p  稠密表示的精度，4~18
+     * @param sp 稀疏表示的精度，p~25
+     */
+    public HyperLogLogPlus(int p, int sp) {
+        if (p < 4 || p > 18 || sp < p || sp > 25) {
+            throw new RuntimeException("精度超出范围：p=" + p + "，sp=" + sp);
+        }
+        this.p = p;
+        this.sp = sp;
+        this.m = 1 << p;
+        // 临时区按需扩容，最多为稠密表示大小的1/16
+        this.tmpLimit = Math.max(16, RegisterSet.getSizeForCount(m) / 16);
+    }
+
+    /**
+     * 添加元素
+     *
+     * @param o 要被添加的元素
+     */
+    public boolean offer(Object o) {
+        return offerHashed(MurmurHash.hash64(o));
+    }
+
+    public boolean offerHashed(long hashedValue) {
+        if (registerSet != null) {
+            // j 代表第几个桶，取hashedValue的前p位
+            final int j = (int) (hashedValue >>> (Long.SIZE - p));
+            // r代表除去前p位剩下部分的前导零 + 1
+            final int r = Long.numberOfLeadingZeros((hashedValue << p) | (1L << (p - 1))) + 1;
+            return registerSet.updateIfGreater(j, Math.min(r, MAX_RANK));
+        }
+        addSparse(encode(hashedValue));
+        return true;
+    }
+
+    /**
+     * 稀疏编码：高位是sp位的下标，低6位是剩余位的前导零 + 1
+     * sp最大为25，所以编码是一个非负int，按int比较就是按下标比较
+     */
+    private int encode(long hashedValue) {
+        int index = (int) (hashedValue >>> (Long.SIZE - sp));
+        int rank = Long.numberOfLeadingZeros((hashedValue << sp) | (1L << (sp - 1))) + 1;
+        return (index << 6) | rank;
+    }
+
+    private void addSparse(int code) {
+        if (tmpCount == tmpSet.length) {
+            if (tmpSet.length < tmpLimit) {
+                tmpSet = Arrays.copyOf(tmpSet, Math.min(tmpLimit, tmpSet.length * 2));
+            } else {
+                mergeTmp();
+                if (sparseList.length > RegisterSet.getSizeForCount(m) * Integer.BYTES) {
+                    // 稀疏表示占用的字节已经多于稠密表示，转换为稠密表示
+                    toDense();
+                    offerCode(code);
+                    return;
+                }
+            }
+        }
+        tmpSet[tmpCount++] = code;
+    }
+
+    // 把临时区排序后与sparseList归并，同一下标只保留最大的前导零
+    private void mergeTmp() {
+        if (tmpCount == 0) return;
+        Arrays.sort(tmpSet, 0, tmpCount);
+        // 每个编码的varint最多5个字节
+        byte[] merged = new byte[sparseList.length + tmpCount * 5];
+        int[] cursor = new int[1];
+        int remaining = sparseCount;
+        int current = remaining > 0 ? readVarint(sparseList, cursor) : 0;
+        int j = 0, n = 0, pos = 0, last = 0, pending = -1;
+        while (remaining > 0 || j < tmpCount) {
+            int next;
+            if (j == tmpCount || (remaining > 0 && current <= tmpSet[j])) {
+                next = current;
+                if (--remaining > 0) current += readVarint(sparseList, cursor);
+            } else {
+                next = tmpSet[j++];
+            }
+            // 下标相同时编码更大的前导零更大，覆盖前一个
+            if (pending >= 0 && (pending >>> 6) != (next >>> 6)) {
+                pos = writeVarint(merged, pos, pending - last);
+                last = pending;
+                n++;
+            }
+            pending = next;
+        }
+        pos = writeVarint(merged, pos, pending - last);
+        n++;
+        sparseList = Arrays.copyOf(merged, pos);
+        sparseCount = n;
+        tmpCount = 0;
+    }
+
+    private static int readVarint(byte[] bytes, int[] cursor) {
+        int value = 0, shift = 0, b;
+        do {
+            b = bytes[cursor[0]++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int writeVarint(byte[] bytes, int pos, int value) {
+        while ((value & ~0x7f) != 0) {
+            bytes[pos++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+        return pos;
+    }
+
+    // 解码出稀疏表示中的所有编码
+    private int[] sparseCodes() {
+        mergeTmp();
+        int[] codes = new int[sparseCount];
+        int[] cursor = new int[1];
+        for (int i = 0, code = 0; i < sparseCount; i++) {
+            code += readVarint(sparseList, cursor);
+            codes[i] = code;
+        }
+        return codes;
+    }
+
+    // 稀疏编码还原为稠密表示的下标和前导零
+    private void toDense() {
+        int[] codes = sparseCodes();
+        registerSet = new RegisterSet(m);
+        for (int code : codes) {
+            offerCode(code);
+        }
+        sparseList = null;
+        tmpSet = null;
+    }
+
+    // 把一个稀疏编码写入稠密表示
+    private void offerCode(int code) {
+        int diff = sp - p;
+        int index = code >>> 6;
+        int j = index >>> diff;
+        int low = index & ((1 << diff) - 1);
+        int r;
+        if (low != 0) {
+            // 前导零落在sp多出来的diff位里
+            r = Integer.numberOfLeadingZeros(low) - (Integer.SIZE - diff) + 1;
+        } else {
+            r = diff + (code & 0x3f);
+        }
+        registerSet.updateIfGreater(j, Math.min(r, MAX_RANK));
+    }
+
+    public boolean isSparse() {
+        return registerSet == null;
+    }
+
+    /**
+     * 估算当前占用的字节数，只计数组内容
+     */
+    public long sizeInBytes() {
+        if (registerSet != null) return (long) registerSet.size * Integer.BYTES;
+        return sparseList.length + (long) tmpSet.length * Integer.BYTES;
+    }
+
+    /**
+     * 合并另一个精度相同的sketch
+     */
+    public void addAll(HyperLogLogPlus other) {
+        if (other.p != this.p || other.sp != this.sp) {
+            throw new RuntimeException("精度不同，不能合并");
+        }
+        if (other.registerSet == null) {
+            for (int code : other.sparseCodes()) {
+                if (registerSet == null) {
+                    addSparse(code);
+                } else {
+                    offerCode(code);
+                }
+            }
+            return;
+        }
+        if (registerSet == null) toDense();
+        registerSet.merge(other.registerSet);
+    }
+
+    public long cardinality() {
+        if (registerSet == null) {
+            mergeTmp();
+            // 稀疏阶段用精度为2^sp的线性计数
+            int msp = 1 << sp;
+            return Math.round(HyperLogLog.linearCounting(msp, msp - sparseCount));
+        }
+
+        // 统计每种register值出现的次数
+        int[] histogram = new int[MAX_RANK + 1];
+        for (int j = 0; j < m; j++) {
+            histogram[registerSet.get(j)]++;
+        }
+        // Ertl的改进估算，register取值为0~q+1，这里q+1 = MAX_RANK
+        int q = MAX_RANK - 1;
+        double z = m * tau(1 - (double) histogram[q + 1] / m);
+        for (int k = q; k >= 1; k--) {
+            z = 0.5 * (z + histogram[k]);
+        }
+        z += m * sigma((double) histogram[0] / m);
+        return Math.round(m * (m / (2 * Math.log(2))) / z);
+    }
+
+    // sigma(x) = x + sum(x^(2^k) * 2^(k-1))
+    private static double sigma(double x) {
+        if (x == 1) return Double.POSITIVE_INFINITY;
+        double y = 1, z = x, last;
+        do {
+            x *= x;
+            last = z;
+            z += x * y;
+            y += y;
+        } while (z != last);
+        return z;
+    }
+
+    // tau(x) = (1 - x - sum((1 - x^(2^-k))^2 * 2^-k)) / 3
+    private static double tau(double x) {
+        if (x == 0 || x == 1) return 0;
+        double y = 1, z = 1 - x, last;
+        do {
+            x = Math.sqrt(x);
+            last = z;
+            y *= 0.5;
+            z -= Math.pow(1 - x, 2) * y;
+        } while (z != last);
+        return z / 3;
+    }
+
+    public static void main(String[] args) {
+        // 不同基数下的相对误差，64位hash在大基数时依然准确
+        long[] cardinalities = {10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+        HyperLogLogPlus plus = new HyperLogLogPlus(14);
+        HyperLogLog classic = new HyperLogLog(14);
+        long v = 0;
+        for (long target : cardinalities) {
+            for (; v < target; v++) {
+                plus.offerHashed(MurmurHash.hashLong64(v));
+                classic.offerHashed(MurmurHash.hashLong(v));
+            }
+            System.out.printf("基数%,d：HLL++ %,d(误差%.2f%%，%s，%d字节)，HLL %,d(误差%.2f%%)%n", target,
+                    plus.cardinality(), 100.0 * (plus.cardinality() - target) / target,
+                    plus.isSparse() ? "稀疏" : "稠密", plus.sizeInBytes(),
+                    classic.cardinality(), 100.0 * (classic.cardinality() - target) / target);
+        }
+
+        // 10000个sketch，每个只有500个不同值
+        long sparseBytes = 0, denseBytes = 0;
+        for (int s = 0; s < 10_000; s++) {
+            HyperLogLogPlus sketch = new HyperLogLogPlus(14);
+            for (int i = 0; i < 500; i++) {
+                sketch.offer((long) s * 1000 + i);
+            }
+            sketch.cardinality();
+            sparseBytes += sketch.sizeInBytes();
+            denseBytes += (long) RegisterSet.getSizeForCount(1 << 14) * Integer.BYTES;
+        }
+        System.out.printf("10000个500基数的sketch：HLL++ %,d字节，稠密HLL %,d字节%n", sparseBytes, denseBytes);
+
+        // 稀疏与稠密、稀疏与稀疏的合并
+        HyperLogLogPlus a = new HyperLogLogPlus(14), b = new HyperLogLogPlus(14), c = new HyperLogLogPlus(14);
+        for (long i = 0; i < 800; i++) a.offer(i);
+        for (long i = 400; i < 1200; i++) b.offer(i);
+        for (long i = 0; i < 50_000; i++) c.offer(i + 100_000);
+        a.addAll(b);
+        System.out.println("稀疏合并：" + a.cardinality() + "(真实值1200，" + (a.isSparse() ? "稀疏" : "稠密") + ")");
+        c.addAll(a);
+        System.out.println("稠密合并：" + c.cardinality() + "(真实值51200)");
+    }
+}
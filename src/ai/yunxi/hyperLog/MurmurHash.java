@@ -1,11 +1,23 @@
 package ai.yunxi.hyperLog;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
 /**
  * 一种快速的非加密hash
  * 适用于对保密性要求不高以及不在意hash碰撞攻击的场合
  */
 public class MurmurHash {
 
+    // 按小端序一次读取4个或8个字节，代替逐字节移位拼接
+    private static final VarHandle INT_LE  = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // MurmurHash3 x64-128的常量
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
     public static int hash(Object o) {
         if (o == null) {
             return 0;
@@ -48,14 +60,7 @@ public class MurmurHash {
         int len_4 = length >> 2;
 
         for (int i = 0; i < len_4; i++) {
-            int i_4 = i << 2;
-            int k = data[i_4 + 3];
-            k = k << 8;
-            k = k | (data[i_4 + 2] & 0xff);
-            k = k << 8;
-            k = k | (data[i_4 + 1] & 0xff);
-            k = k << 8;
-            k = k | (data[i_4] & 0xff);
+            int k = (int) INT_LE.get(data, i << 2);
             k *= m;
             k ^= k >>> r;
             k *= m;
@@ -110,70 +115,232 @@ public class MurmurHash {
         return h;
     }
 
-//    public static long hash64(Object o) {
-//        if (o == null) {
-//            return 0L;
-//        } else if (o instanceof String) {
-//            final byte[] bytes = ((String) o).getBytes();
-//            return hash64(bytes, bytes.length);
-//        } else if (o instanceof byte[]) {
-//            final byte[] bytes = (byte[]) o;
-//            return hash64(bytes, bytes.length);
-//        }
-//        return hash64(o.toString());
-//    }
+    public static long hash64(Object o) {
+        if (o == null) {
+            return 0L;
+        } else if (o instanceof Long || o instanceof Integer) {
+            return hashLong64(((Number) o).longValue());
+        } else if (o instanceof String) {
+            final byte[] bytes = ((String) o).getBytes();
+            return hash64(bytes, bytes.length);
+        } else if (o instanceof byte[]) {
+            final byte[] bytes = (byte[]) o;
+            return hash64(bytes, bytes.length);
+        }
+        return hash64(o.toString());
+    }
 
     // 64 bit implementation copied from here:  https://github.com/tnm/murmurhash-java
 
-//    public static long hash64(final byte[] data, int length) {
-//        return hash64(data, length, 0xe17a1465);
-//    }
+    public static long hash64(final byte[] data, int length) {
+        return hash64(data, length, 0xe17a1465);
+    }
 
-//    public static long hash64(final byte[] data, int length, int seed) {
-//        final long m = 0xc6a4a7935bd1e995L;
-//        final int r = 47;
-//
-//        long h = (seed & 0xffffffffL) ^ (length * m);
-//
-//        int length8 = length / 8;
-//
-//        for (int i = 0; i < length8; i++) {
-//            final int i8 = i * 8;
-//            long k = ((long) data[i8] & 0xff) + (((long) data[i8 + 1] & 0xff) << 8)
-//                    + (((long) data[i8 + 2] & 0xff) << 16) + (((long) data[i8 + 3] & 0xff) << 24)
-//                    + (((long) data[i8 + 4] & 0xff) << 32) + (((long) data[i8 + 5] & 0xff) << 40)
-//                    + (((long) data[i8 + 6] & 0xff) << 48) + (((long) data[i8 + 7] & 0xff) << 56);
-//
-//            k *= m;
-//            k ^= k >>> r;
-//            k *= m;
-//
-//            h ^= k;
-//            h *= m;
-//        }
-//
-//        switch (length % 8) {
-//            case 7:
-//                h ^= (long) (data[(length & ~7) + 6] & 0xff) << 48;
-//            case 6:
-//                h ^= (long) (data[(length & ~7) + 5] & 0xff) << 40;
-//            case 5:
-//                h ^= (long) (data[(length & ~7) + 4] & 0xff) << 32;
-//            case 4:
-//                h ^= (long) (data[(length & ~7) + 3] & 0xff) << 24;
-//            case 3:
-//                h ^= (long) (data[(length & ~7) + 2] & 0xff) << 16;
-//            case 2:
-//                h ^= (long) (data[(length & ~7) + 1] & 0xff) << 8;
-//            case 1:
-//                h ^= (data[length & ~7] & 0xff);
-//                h *= m;
-//        }
-//
-//        h ^= h >>> r;
-//        h *= m;
-//        h ^= h >>> r;
-//
-//        return h;
-//    }
-}
\ No newline at end of file
+    @SuppressWarnings("fallthrough")
+    public static long hash64(final byte[] data, int length, int seed) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+
+        long h = (seed & 0xffffffffL) ^ (length * m);
+
+        int length8 = length / 8;
+
+        for (int i = 0; i < length8; i++) {
+            long k = (long) LONG_LE.get(data, i * 8);
+
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+
+            h ^= k;
+            h *= m;
+        }
+
+        // 有意不加break：剩余n个字节时从case n依次执行到case 1
+        switch (length % 8) {
+            case 7:
+                h ^= (long) (data[(length & ~7) + 6] & 0xff) << 48;
+            case 6:
+                h ^= (long) (data[(length & ~7) + 5] & 0xff) << 40;
+            case 5:
+                h ^= (long) (data[(length & ~7) + 4] & 0xff) << 32;
+            case 4:
+                h ^= (long) (data[(length & ~7) + 3] & 0xff) << 24;
+            case 3:
+                h ^= (long) (data[(length & ~7) + 2] & 0xff) << 16;
+            case 2:
+                h ^= (long) (data[(length & ~7) + 1] & 0xff) << 8;
+            case 1:
+                h ^= (data[length & ~7] & 0xff);
+                h *= m;
+        }
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+
+        return h;
+    }
+
+    /**
+     * 与hash64对8个字节的小端序数组计算的结果相同，但不分配数组
+     */
+    public static long hashLong64(long data) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+
+        long h = (0xe17a1465 & 0xffffffffL) ^ (8 * m);
+
+        long k = data;
+        k *= m;
+        k ^= k >>> r;
+        k *= m;
+
+        h ^= k;
+        h *= m;
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+
+        return h;
+    }
+
+    /**
+     * MurmurHash3 x64-128
+     * 每次处理16个字节，两路64位状态交叉混合，比32位的MurmurHash2分布更好，适合HyperLogLog++和一致性哈希
+     *
+     * @param out 长度至少为2，out[0]、out[1]分别为128位结果的低64位和高64位
+     */
+    public static void hash3_x64_128(byte[] data, int offset, int length, int seed, long[] out) {
+        long h1 = seed & 0xffffffffL;
+        long h2 = seed & 0xffffffffL;
+
+        int end = offset + (length & ~15);
+        for (int i = offset; i < end; i += 16) {
+            long k1 = (long) LONG_LE.get(data, i);
+            long k2 = (long) LONG_LE.get(data, i + 8);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // 剩余不足16个字节，前8个进k1，后面的进k2
+        int tail = length & 15;
+        if (tail > 8) {
+            h2 ^= mixK2(readPartial(data, end + 8, tail - 8));
+        }
+        if (tail > 0) {
+            h1 ^= mixK1(tail >= 8 ? (long) LONG_LE.get(data, end) : readPartial(data, end, tail));
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+
+        out[0] = h1;
+        out[1] = h2;
+    }
+
+    /**
+     * MurmurHash3 x64-128的低64位
+     */
+    public static long hash3_x64_64(byte[] data, int offset, int length, int seed) {
+        long[] out = new long[2];
+        hash3_x64_128(data, offset, length, seed, out);
+        return out[0];
+    }
+
+    /**
+     * 等价于对key的8个小端序字节做MurmurHash3 x64-128并取低64位，没有循环和分支
+     */
+    public static long hash3Long(long key, int seed) {
+        long h1 = seed & 0xffffffffL;
+        long h2 = seed & 0xffffffffL;
+
+        h1 ^= mixK1(key);
+
+        h1 ^= 8;
+        h2 ^= 8;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        return h1 + h2;
+    }
+
+    /**
+     * 批量计算定长key的hash，out[i] = hash3Long(keys[i], 0)
+     * 每个元素的计算互不依赖，CPU可以把相邻几个key的乘法流水线并行执行
+     */
+    public static void hashBulk(long[] keys, long[] out) {
+        int n = keys.length;
+        int i = 0;
+        // 4路展开，减少循环开销并暴露指令级并行
+        for (; i + 4 <= n; i += 4) {
+            long a = keys[i], b = keys[i + 1], c = keys[i + 2], d = keys[i + 3];
+            out[i] = hash3Long(a, 0);
+            out[i + 1] = hash3Long(b, 0);
+            out[i + 2] = hash3Long(c, 0);
+            out[i + 3] = hash3Long(d, 0);
+        }
+        for (; i < n; i++) {
+            out[i] = hash3Long(keys[i], 0);
+        }
+    }
+
+    /**
+     * 批量计算变长key的hash，out[i]为keys[i]的MurmurHash3 x64-128低64位，复用同一个结果数组
+     */
+    public static void hashBulk(byte[][] keys, long[] out) {
+        long[] pair = new long[2];
+        for (int i = 0; i < keys.length; i++) {
+            hash3_x64_128(keys[i], 0, keys[i].length, 0, pair);
+            out[i] = pair[0];
+        }
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    // 按小端序读取不足8个的字节
+    private static long readPartial(byte[] data, int offset, int length) {
+        long k = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            k = (k << 8) | (data[offset + i] & 0xffL);
+        }
+        return k;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
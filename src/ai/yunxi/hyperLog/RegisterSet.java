@@ -1,7 +1,13 @@
 package ai.yunxi.hyperLog;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 public class RegisterSet {
 
+    // 对M中的int做volatile读和CAS
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(int[].class);
+
     //2的6次方是64
     public final static int LOG2_BITS_PER_WORD = 6;
     //每个register占5位,代码里有一些细节涉及到这个5位，所以仅仅改这个参数是会报错的
@@ -75,27 +81,57 @@ public class RegisterSet {
         }
     }
 
-//    public void merge(RegisterSet that) {
-//        for (int bucket = 0; bucket < M.length; bucket++) {
-//            int word = 0;
-//            for (int j = 0; j < LOG2_BITS_PER_WORD; j++) {
-//                int mask = 0x1f << (REGISTER_SIZE * j);
-//
-//                int thisVal = (this.M[bucket] & mask);
-//                int thatVal = (that.M[bucket] & mask);
-//                word |= Math.max(thisVal, thatVal);
-//            }
-//            this.M[bucket] = word;
-//        }
-//    }
+    /**
+     * updateIfGreater的线程安全版本
+     * 一个int里打包了6个register，多个线程更新同一个int中不同的register时，普通的读-改-写会互相覆盖，
+     * 这里对整个int做CAS，失败说明其他线程改过这个int，重新读取后再比较，直到成功或者已经不小于value
+     */
+    public boolean updateIfGreaterConcurrent(int position, int value) {
+        int bucket = position / LOG2_BITS_PER_WORD;    //M下标
+        int shift = REGISTER_SIZE * (position - (bucket * LOG2_BITS_PER_WORD));  //M偏移
+        int mask = 0x1f << shift;      //register大小为5位
+        int newVal = value << shift;
+
+        while (true) {
+            int word = (int) WORDS.getVolatile(this.M, bucket);
+            // 5位register最多占到第29位，不会碰到符号位
+            if ((word & mask) >= newVal) {
+                return false;
+            }
+            if (WORDS.compareAndSet(this.M, bucket, word, (word & ~mask) | newVal)) {
+                return true;
+            }
+        }
+    }
 
-//    int[] readOnlyBits() {
-//        return M;
-//    }
+    /**
+     * 按register取最大值合并，两个RegisterSet的count必须相同
+     * 5位register的最大值31不会碰到int的符号位，直接比较掩码后的值即可
+     */
+    public void merge(RegisterSet that) {
+        if (that.count != this.count) {
+            throw new RuntimeException("register数量不同，不能合并：" + this.count + " != " + that.count);
+        }
+        for (int bucket = 0; bucket < M.length; bucket++) {
+            int word = 0;
+            for (int j = 0; j < LOG2_BITS_PER_WORD; j++) {
+                int mask = 0x1f << (REGISTER_SIZE * j);
+
+                int thisVal = (this.M[bucket] & mask);
+                int thatVal = (that.M[bucket] & mask);
+                word |= Math.max(thisVal, thatVal);
+            }
+            this.M[bucket] = word;
+        }
+    }
 
-//    public int[] bits() {
-//        int[] copy = new int[size];
-//        System.arraycopy(M, 0, copy, 0, M.length);
-//        return copy;
-//    }
+    int[] readOnlyBits() {
+        return M;
+    }
+
+    public int[] bits() {
+        int[] copy = new int[size];
+        System.arraycopy(M, 0, copy, 0, M.length);
+        return copy;
+    }
 }
@@ -0,0 +1,149 @@
+package ai.yunxi.hyperLog;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 滑动窗口HyperLogLog，回答"最近一段时间内有多少个不同元素"
+ * 把时间切成固定长度的epoch，用一个环形数组为最近的epochs个epoch各保存一个RegisterSet。
+ * 元素按自己的时间戳写入对应epoch的RegisterSet，查询时把窗口覆盖的epoch按register取最大值合并，
+ * 合并结果就是窗口内所有元素组成的HyperLogLog，不需要重新读取原始数据。
+ * 窗口的粒度是一个epoch，最大窗口为epochs * epochMillis，内存为epochs个RegisterSet。
+ * 非线程安全。
+ */
+public class SlidingHyperLogLog {
+
+    private final int log2m;
+    private final long epochMillis;
+    private final RegisterSet[] ring;
+    // ringEpochs[i]是ring[i]当前保存的epoch编号，-1表示空
+    private final long[] ringEpochs;
+    // 写入过的最新epoch
+    private long latestEpoch = -1;
+
+    /**
+     * @param log2m       m的log值
+     * @param epochMillis 每个epoch的时长，即窗口的粒度
+     * @param epochs      保留的epoch个数，最大窗口为epochs * epochMillis
+     */
+    public SlidingHyperLogLog(int log2m, long epochMillis, int epochs) {
+        this.log2m = log2m;
+        this.epochMillis = epochMillis;
+        this.ring = new RegisterSet[epochs];
+        this.ringEpochs = new long[epochs];
+        for (int i = 0; i < epochs; i++) {
+            ringEpochs[i] = -1;
+        }
+    }
+
+    public boolean offer(Object o) {
+        return offer(o, System.currentTimeMillis());
+    }
+
+    /**
+     * 添加元素
+     *
+     * @param o         要被添加的元素
+     * @param timestamp 元素发生的时间，不能为负数，早于最大窗口的元素被丢弃
+     */
+    public boolean offer(Object o, long timestamp) {
+        return offerHashed(MurmurHash.hash(o), timestamp);
+    }
+
+    public boolean offerHashed(int hashedValue, long timestamp) {
+        // epoch编号-1表示空位，负数时间戳会算出负的epoch和下标
+        if (timestamp < 0) {
+            throw new RuntimeException("时间戳不能为负数：" + timestamp);
+        }
+        long epoch = timestamp / epochMillis;
+        if (epoch <= latestEpoch - ring.length) {
+            // 已经滑出最大窗口
+            return false;
+        }
+        int slot = (int) (epoch % ring.length);
+        if (ringEpochs[slot] != epoch) {
+            // 这个位置上是更早的epoch，整体丢弃后复用
+            ring[slot] = new RegisterSet(1 << log2m);
+            ringEpochs[slot] = epoch;
+        }
+        latestEpoch = Math.max(latestEpoch, epoch);
+
+        // 与HyperLogLog.offerHashed相同的桶和前导零
+        final int j = hashedValue >>> (Integer.SIZE - log2m);
+        final int r = Integer.numberOfLeadingZeros((hashedValue << this.log2m) | (1 << (this.log2m - 1)) + 1) + 1;
+        return ring[slot].updateIfGreater(j, r);
+    }
+
+    /**
+     * 合并出窗口[now - windowMillis, now]覆盖的epoch，按epoch粒度向外取整
+     *
+     * @param windowMillis 窗口长度，不超过epochs * epochMillis
+     * @param now          窗口的结束时间，不能为负数
+     */
+    public HyperLogLog window(long windowMillis, long now) {
+        if (now < 0) {
+            throw new RuntimeException("时间戳不能为负数：" + now);
+        }
+        long endEpoch = now / epochMillis;
+        // 窗口起点可能早于0，向下取整
+        long startEpoch = Math.floorDiv(now - windowMillis, epochMillis);
+        if (endEpoch - startEpoch >= ring.length) {
+            throw new RuntimeException("窗口超过最大长度：" + windowMillis);
+        }
+        RegisterSet merged = new RegisterSet(1 << log2m);
+        for (long epoch = startEpoch; epoch <= endEpoch; epoch++) {
+            if (epoch < 0) continue;
+            int slot = (int) (epoch % ring.length);
+            if (ringEpochs[slot] == epoch) {
+                merged.merge(ring[slot]);
+            }
+        }
+        return new HyperLogLog(log2m, merged);
+    }
+
+    public long cardinality(long windowMillis, long now) {
+        return window(windowMillis, now).cardinality();
+    }
+
+    public long cardinality(long windowMillis) {
+        return cardinality(windowMillis, System.currentTimeMillis());
+    }
+
+    public static void main(String[] args) {
+        // 按秒切分，保留10分钟
+        SlidingHyperLogLog sliding = new SlidingHyperLogLog(14, 1000, 600);
+        long minute = 60_000;
+        Random random = new Random(1);
+        // 模拟30分钟的访问，第t分钟的活跃用户是[t*2000, t*2000+10000)中的随机用户，相邻分钟有大量重叠
+        long[][] users = new long[30 * 60][];
+        for (int second = 0; second < users.length; second++) {
+            int t = second / 60;
+            users[second] = new long[200];
+            for (int i = 0; i < users[second].length; i++) {
+                users[second][i] = t * 2000L + random.nextInt(10000);
+                sliding.offer(users[second][i], second * 1000L);
+            }
+            if ((second + 1) % 300 == 0) {
+                long now = second * 1000L;
+                // 精确统计最近5分钟的不同用户
+                Set<Long> exact = new HashSet<>();
+                for (int s = Math.max(0, second - 299); s <= second; s++) {
+                    for (long user : users[s]) exact.add(user);
+                }
+                System.out.println("第" + (second + 1) / 60 + "分钟：最近5分钟估算" + sliding.cardinality(5 * minute - 1000, now)
+                        + "，真实值" + exact.size() + "；最近1分钟估算" + sliding.cardinality(minute - 1000, now));
+            }
+        }
+        // 负数时间戳直接拒绝，而不是算出负的下标
+        boolean rejected = false;
+        try {
+            sliding.offer("before-epoch", -1);
+        } catch (RuntimeException e) {
+            rejected = true;
+        }
+        if (!rejected) {
+            throw new RuntimeException("负数时间戳没有被拒绝");
+        }
+    }
+}
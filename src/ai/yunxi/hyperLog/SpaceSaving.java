@@ -0,0 +1,163 @@
+package ai.yunxi.hyperLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving算法统计数据流中出现次数最多的k个元素
+ * 来源于论文《Efficient Computation of Frequent and Top-k Elements in Data Streams》
+ * 只保留capacity个计数器，用小顶堆维护。新元素到来时如果计数器已满，就替换掉次数最少的计数器，
+ * 并继承它的次数作为误差上界：新元素的真实次数在[count - error, count]之间。
+ * 出现次数超过总数 / capacity的元素一定在结果中。
+ * 所有方法用同一把锁，批量接口只加一次锁。
+ */
+public class SpaceSaving<T> {
+
+    /**
+     * 一个计数器：元素、估算次数和误差上界
+     */
+    public static class Counter<T> {
+        private final T item;
+        private long count;
+        private long error;
+        // 在堆数组中的下标
+        private int heapIndex;
+
+        Counter(T item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return item + "=" + count + "(±" + error + ")";
+        }
+    }
+
+    private final int capacity;
+    private final Map<T, Counter<T>> counters;
+    // 按count的小顶堆，heap[0]是次数最少的计数器
+    private final Counter<T>[] heap;
+    private int heapSize;
+
+    /**
+     * @param capacity 计数器数量，通常取需要的k的几倍，越大越准
+     */
+    @SuppressWarnings("unchecked")
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new RuntimeException("capacity必须大于0：" + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = (Counter<T>[]) new Counter<?>[capacity];
+    }
+
+    public synchronized void offer(T item) {
+        add(item, 1);
+    }
+
+    public synchronized void offer(T item, long count) {
+        add(item, count);
+    }
+
+    /**
+     * 批量添加，每个元素计1次
+     */
+    public synchronized void offerAll(T[] items) {
+        for (T item : items) {
+            add(item, 1);
+        }
+    }
+
+    private void add(T item, long count) {
+        Counter<T> counter = counters.get(item);
+        if (counter != null) {
+            counter.count += count;
+            siftDown(counter.heapIndex);
+            return;
+        }
+        if (heapSize < capacity) {
+            counter = new Counter<>(item, count, 0);
+            counters.put(item, counter);
+            counter.heapIndex = heapSize;
+            heap[heapSize++] = counter;
+            siftUp(counter.heapIndex);
+            return;
+        }
+        // 替换次数最少的计数器，新元素继承它的次数
+        Counter<T> min = heap[0];
+        counters.remove(min.item);
+        counter = new Counter<>(item, min.count + count, min.count);
+        counters.put(item, counter);
+        counter.heapIndex = 0;
+        heap[0] = counter;
+        siftDown(0);
+    }
+
+    /**
+     * 返回次数最多的k个元素，按次数降序
+     */
+    public synchronized List<Counter<T>> top(int k) {
+        List<Counter<T>> all = new ArrayList<>(heapSize);
+        for (int i = 0; i < heapSize; i++) {
+            Counter<T> c = heap[i];
+            all.add(new Counter<>(c.item, c.count, c.error));
+        }
+        all.sort((a, b) -> Long.compare(b.count, a.count));
+        return all.subList(0, Math.min(k, all.size()));
+    }
+
+    /**
+     * 元素的估算次数，不在计数器中时返回0
+     */
+    public synchronized long estimate(T item) {
+        Counter<T> counter = counters.get(item);
+        return counter == null ? 0 : counter.count;
+    }
+
+    // 次数增大后向下调整
+    private void siftDown(int i) {
+        Counter<T> node = heap[i];
+        while (true) {
+            int left = i * 2 + 1;
+            if (left >= heapSize) break;
+            int right = left + 1;
+            int min = right < heapSize && heap[right].count < heap[left].count ? right : left;
+            if (heap[min].count >= node.count) break;
+            heap[i] = heap[min];
+            heap[i].heapIndex = i;
+            i = min;
+        }
+        heap[i] = node;
+        node.heapIndex = i;
+    }
+
+    private void siftUp(int i) {
+        Counter<T> node = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent].count <= node.count) break;
+            heap[i] = heap[parent];
+            heap[i].heapIndex = i;
+            i = parent;
+        }
+        heap[i] = node;
+        node.heapIndex = i;
+    }
+}
@@ -0,0 +1,71 @@
+package ai.yunxi.hyperLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 多线程共用一个HyperLogLog的压力测试和吞吐测试
+ * 1.32个线程各自写入不相交的一段整数，检查估算误差是否在3倍相对标准偏差(1.04/sqrt(m))之内
+ * 2.线程数从1翻倍到CPU核数，统计每秒offer次数
+ */
+public class TestConcurrentHyperLog {
+
+    public static void main(String[] args) throws InterruptedException {
+        int log2m = 14, threads = 32, perThread = 200_000;
+        double rsd = 1.04 / Math.sqrt(1 << log2m);
+        long expected = (long) threads * perThread;
+
+        for (int round = 0; round < 5; round++) {
+            HyperLogLog unsafe = new HyperLogLog(log2m);
+            HyperLogLog safe = HyperLogLog.concurrent(log2m);
+            run(unsafe, threads, perThread, round);
+            run(safe, threads, perThread, round);
+
+            // 同样的数据单线程写入，作为参照：并发版本应与它完全一致
+            HyperLogLog serial = new HyperLogLog(log2m);
+            for (long v = 0; v < expected; v++) serial.offer(round * expected + v);
+
+            double error = Math.abs(safe.cardinality() - expected) / (double) expected;
+            System.out.printf("第%d轮 真实值%d，非线程安全%d，CAS%d(误差%.3f%%，%s)，单线程%d，CAS与单线程一致：%s%n",
+                    round, expected, unsafe.cardinality(), safe.cardinality(), error * 100,
+                    error <= 3 * rsd ? "在3倍RSD内" : "超出3倍RSD", serial.cardinality(),
+                    safe.cardinality() == serial.cardinality());
+            // register按最大值合并与写入顺序无关，CAS版本的register应与单线程逐个相同
+            if (!Arrays.equals(safe.getBytes(), serial.getBytes()) || safe.cardinality() != serial.cardinality()) {
+                throw new RuntimeException("第" + round + "轮CAS版本与单线程结果不一致");
+            }
+            if (error > 3 * rsd) {
+                throw new RuntimeException("第" + round + "轮误差" + error + "超出3倍RSD");
+            }
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int n = 1; n <= cores; n <<= 1) {
+            HyperLogLog sketch = HyperLogLog.concurrent(16);
+            int count = 4_000_000 / n;
+            // 先预热
+            run(sketch, n, count, 100);
+            long start = System.nanoTime();
+            run(sketch, n, count, 0);
+            long cost = System.nanoTime() - start;
+            System.out.printf("%2d个线程：%.1f百万次offer/秒%n", n, (double) count * n / cost * 1000);
+        }
+    }
+
+    private static void run(HyperLogLog sketch, int threads, int perThread, long round) throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        long base = round * threads * (long) perThread;
+        for (int t = 0; t < threads; t++) {
+            long from = base + (long) t * perThread;
+            Thread worker = new Thread(() -> {
+                for (long v = from; v < from + perThread; v++) {
+                    sketch.offer(v);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) worker.join();
+    }
+}
@@ -0,0 +1,120 @@
+package ai.yunxi.hyperLog;
+
+import java.util.*;
+
+/**
+ * Count-Min Sketch和Space-Saving与HashMap精确计数的对比
+ * 数据为Zipf分布：第k热的元素出现的概率正比于1/k
+ */
+public class TestFrequency {
+
+    public static void main(String[] args) throws InterruptedException {
+        int n = 5_000_000, distinct = 1_000_000, k = 100;
+        Long[] stream = zipf(n, distinct, 1.1, new Random(3));
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            Map<Long, Long> exact = new HashMap<>();
+            for (Long item : stream) exact.merge(item, 1L, Long::sum);
+            long exactCost = System.nanoTime() - start;
+
+            // 误差0.01% * n，失败概率0.1%
+            start = System.nanoTime();
+            CountMinSketch sketch = new CountMinSketch(0.0001, 0.001);
+            sketch.addAll(stream);
+            long sketchCost = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            SpaceSaving<Long> topK = new SpaceSaving<>(k * 10);
+            topK.offerAll(stream);
+            long topCost = System.nanoTime() - start;
+
+            // Count-Min的误差：所有出现过的元素的平均和最大高估量
+            long maxError = 0, sumError = 0;
+            for (Map.Entry<Long, Long> entry : exact.entrySet()) {
+                long error = sketch.estimate(entry.getKey()) - entry.getValue();
+                if (error < 0) throw new RuntimeException("Count-Min估算值偏小");
+                maxError = Math.max(maxError, error);
+                sumError += error;
+            }
+
+            // Top-K的召回率
+            List<Map.Entry<Long, Long>> sorted = new ArrayList<>(exact.entrySet());
+            sorted.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+            Set<Long> expected = new HashSet<>();
+            for (int i = 0; i < k; i++) expected.add(sorted.get(i).getKey());
+            int hit = 0;
+            for (SpaceSaving.Counter<Long> counter : topK.top(k)) {
+                if (expected.contains(counter.getItem())) hit++;
+            }
+
+            System.out.printf("HashMap %.1fns/op(%d个键)；Count-Min %.1fns/op，%dKB，平均高估%.3f，最大高估%d(上限%d)；"
+                            + "Space-Saving %.1fns/op，Top%d召回%d%%%n",
+                    (double) exactCost / n, exact.size(), (double) sketchCost / n, sketch.getBytes().length / 1024,
+                    (double) sumError / exact.size(), maxError, (long) (0.0001 * n),
+                    (double) topCost / n, k, hit * 100 / k);
+        }
+
+        // 4个线程并发写同一个sketch，合计次数应与单线程相同，合并和序列化后结果不变
+        CountMinSketch shared = new CountMinSketch(5, 1 << 16, -1);
+        CountMinSketch[] parts = new CountMinSketch[4];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int from = t * (n / 4);
+            parts[t] = new CountMinSketch(5, 1 << 16, -1);
+            CountMinSketch part = parts[t];
+            Thread thread = new Thread(() -> {
+                for (int i = from; i < from + n / 4; i++) {
+                    shared.add(stream[i]);
+                    part.add(stream[i]);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+        // 并发写入后每个元素的估算值仍不能小于真实次数
+        Map<Long, Long> counts = new HashMap<>();
+        for (Long item : stream) counts.merge(item, 1L, Long::sum);
+        for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+            if (shared.estimate(entry.getKey()) < entry.getValue()) {
+                throw new RuntimeException("并发写入后估算值偏小：" + entry.getKey() + "，估算"
+                        + shared.estimate(entry.getKey()) + "，真实" + entry.getValue());
+            }
+        }
+        // 8个线程同时增加同一个元素，保守更新不能丢失增加
+        CountMinSketch hot = new CountMinSketch(5, 1 << 16, -1);
+        threads.clear();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 500_000; i++) hot.add(42L);
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+        if (hot.estimate(42L) < 8 * 500_000L) {
+            throw new RuntimeException("并发增加同一个元素时丢失了增加：" + hot.estimate(42L));
+        }
+        CountMinSketch merged = CountMinSketch.build(parts[0].getBytes());
+        for (int t = 1; t < 4; t++) merged.merge(parts[t]);
+        System.out.println("并发写入总次数：" + shared.size() + "，合并后总次数：" + merged.size()
+                + "，最热元素估算：并发" + shared.estimate(1L) + "，合并" + merged.estimate(1L)
+                + "，8线程增加同一元素：" + hot.estimate(42L));
+    }
+
+    private static Long[] zipf(int n, int distinct, double s, Random random) {
+        double[] cdf = new double[distinct];
+        double sum = 0;
+        for (int k = 0; k < distinct; k++) {
+            sum += 1 / Math.pow(k + 1, s);
+            cdf[k] = sum;
+        }
+        Long[] items = new Long[n];
+        for (int i = 0; i < n; i++) {
+            int k = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            items[i] = (long) (k < 0 ? -k - 1 : k) + 1;
+        }
+        return items;
+    }
+}
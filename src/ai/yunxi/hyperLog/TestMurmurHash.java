@@ -0,0 +1,54 @@
+package ai.yunxi.hyperLog;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 对比MurmurHash2 32位、MurmurHash2 64位和MurmurHash3 x64-128的吞吐，以及批量接口hashBulk
+ */
+public class TestMurmurHash {
+
+    public static void main(String[] args) {
+        // 已知结果校验，与Guava的Hashing.murmur3_128()一致
+        long[] out = new long[2];
+        byte[] hello = "hello".getBytes(StandardCharsets.UTF_8);
+        MurmurHash.hash3_x64_128(hello, 0, hello.length, 0, out);
+        System.out.println("murmur3(\"hello\")正确：" + (out[0] == 0xcbd8a7b341bd9b02L && out[1] == 0x5b1e906a48ae1d19L));
+
+        int n = 4_000_000;
+        long[] keys = new long[n];
+        long[] hashes = new long[n];
+        byte[][] strings = new byte[n / 4][];
+        for (int i = 0; i < n; i++) keys[i] = i * 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = ("user:" + i + ":session").getBytes(StandardCharsets.UTF_8);
+        }
+
+        for (int round = 0; round < 5; round++) {
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) sink += MurmurHash.hashLong(keys[i]);
+            long hash2 = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) sink += MurmurHash.hashLong64(keys[i]);
+            long hash64 = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            MurmurHash.hashBulk(keys, hashes);
+            long bulk = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (byte[] s : strings) sink += MurmurHash.hash(s, s.length, -1);
+            long bytes2 = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            MurmurHash.hashBulk(strings, hashes);
+            long bytes3 = System.nanoTime() - start;
+
+            System.out.printf("long键 ns/op：murmur2-32 %.2f，murmur2-64 %.2f，murmur3批量 %.2f；"
+                            + "字符串 ns/op：murmur2-32 %.2f，murmur3批量 %.2f (%d)%n",
+                    (double) hash2 / n, (double) hash64 / n, (double) bulk / n,
+                    (double) bytes2 / strings.length, (double) bytes3 / strings.length, sink + hashes[0]);
+        }
+    }
+}
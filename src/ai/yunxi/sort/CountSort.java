@@ -1,10 +1,22 @@
 package ai.yunxi.sort;
 
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 // 计数排序
 public class CountSort {
 
+    // 值域超过n的这么多倍时，计数数组比数据本身大得多，改用基数排序
+    private static final int RANGE_FACTOR = 4;
+    // 长度超过该值时并行计数
+    private static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    private final RadixSort radixSort = new RadixSort();
+    private final KeySort keySort = new KeySort();
+
     /**
      * 计数排序的核心在于将输入的数据值转化为键存储在额外开辟的数组空间中。
      * 作为一种线性时间复杂度的排序，计数排序要求输入的数据必须是有确定范围的整数。
@@ -12,6 +24,19 @@ public class CountSort {
      * 然后根据数组C来将A中的元素排到正确的位置。
      */
     public void countSort(int[] array) {
+        countSort(array, null);
+    }
+
+    /**
+     * 并行计数排序：每个线程统计自己那一块的计数数组，合并后做前缀和，再按值域分段并行回填
+     * 各线程的计数数组合计不超过n个int，值域更大时顺序计数
+     */
+    public void parallelCountSort(int[] array) {
+        countSort(array, ForkJoinPool.commonPool());
+    }
+
+    private void countSort(int[] array, ForkJoinPool pool) {
+        if (array.length < 2) return;
         // 查找数组的最大和最小值
         int max = array[0], min = array[0];
         for (int i = 1; i < array.length; i++) {
@@ -20,19 +45,216 @@ public class CountSort {
             if (array[i] < min)
                 min = array[i];
         }
-        // 构建数组bucket来存储array中值等于bucket坐标的元素个数
-        int[] bucket = new int[max - min + 1];
-        for (int value : array) {
-            bucket[value - min]++;
+        // 用long计算值域，max - min可能超出int
+        if (!smallRange((long) max - min, array.length)) {
+            radixSort.sort(array, pool == null ? ForkJoinPool.commonPool() : pool);
+            return;
+        }
+        int n = array.length, size = max - min + 1, offset = min;
+        int chunks = chunks(pool, n, size);
+        // 构建数组bucket来存储array中值等于bucket坐标的元素个数，每块一个
+        int[][] buckets = new int[chunks][size];
+        RadixSort.forEachChunk(pool, chunks, t -> {
+            int[] bucket = buckets[t];
+            for (int i = RadixSort.chunkFrom(n, chunks, t), to = RadixSort.chunkFrom(n, chunks, t + 1); i < to; i++) {
+                bucket[array[i] - offset]++;
+            }
+        });
+        // 合并各块的计数，再用前缀和求出每个值的起始位置
+        int[] bucket = buckets[0];
+        for (int t = 1; t < chunks; t++) {
+            for (int i = 0; i < size; i++) {
+                bucket[i] += buckets[t][i];
+            }
+        }
+        int[] start = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            start[i + 1] = start[i] + bucket[i];
+        }
+        // 从bucket依次取数，取值为bucket坐标；并行时每块负责一段值域
+        RadixSort.forEachChunk(pool, chunks, t -> {
+            for (int i = RadixSort.chunkFrom(size, chunks, t), to = RadixSort.chunkFrom(size, chunks, t + 1); i < to; i++) {
+                Arrays.fill(array, start[i], start[i + 1], i + offset);
+            }
+        });
+    }
+
+    /**
+     * long数组的计数排序，过程同countSort(int[])，值域过大时改用RadixSort.sort(long[])
+     * 时间戳、ID这类long值在一个小窗口内时值域可能很小，计数数组仍按int下标
+     */
+    public void countSort(long[] array) {
+        countSort(array, null);
+    }
+
+    public void parallelCountSort(long[] array) {
+        countSort(array, ForkJoinPool.commonPool());
+    }
+
+    private void countSort(long[] array, ForkJoinPool pool) {
+        if (array.length < 2) return;
+        long max = array[0], min = array[0];
+        for (int i = 1; i < array.length; i++) {
+            if (array[i] > max)
+                max = array[i];
+            if (array[i] < min)
+                min = array[i];
+        }
+        int n = array.length;
+        if (!smallRange(max - min, n)) {
+            radixSort.sort(array, pool == null ? ForkJoinPool.commonPool() : pool);
+            return;
+        }
+        int size = (int) (max - min + 1);
+        long offset = min;
+        int chunks = chunks(pool, n, size);
+        int[][] buckets = new int[chunks][size];
+        RadixSort.forEachChunk(pool, chunks, t -> {
+            int[] bucket = buckets[t];
+            for (int i = RadixSort.chunkFrom(n, chunks, t), to = RadixSort.chunkFrom(n, chunks, t + 1); i < to; i++) {
+                bucket[(int) (array[i] - offset)]++;
+            }
+        });
+        int[] bucket = buckets[0];
+        for (int t = 1; t < chunks; t++) {
+            for (int i = 0; i < size; i++) {
+                bucket[i] += buckets[t][i];
+            }
+        }
+        int[] start = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            start[i + 1] = start[i] + bucket[i];
+        }
+        RadixSort.forEachChunk(pool, chunks, t -> {
+            for (int i = RadixSort.chunkFrom(size, chunks, t), to = RadixSort.chunkFrom(size, chunks, t + 1); i < to; i++) {
+                Arrays.fill(array, start[i], start[i + 1], i + offset);
+            }
+        });
+    }
+
+    /**
+     * 计数的分块数，每块一个大小为size的计数数组
+     * 各块计数数组的总大小超过n时，计数数组比数据本身还大，合并计数的开销抵消了并行的收益，只分一块
+     */
+    private static int chunks(ForkJoinPool pool, int n, int size) {
+        if (pool == null || n < PARALLEL_THRESHOLD) return 1;
+        return (long) size * pool.getParallelism() <= n ? pool.getParallelism() : 1;
+    }
+
+    // 值域max - min + 1不超过RANGE_FACTOR * n；difference为max - min，按无符号数比较，溢出的差值也能正确判断
+    private static boolean smallRange(long difference, int n) {
+        return Long.compareUnsigned(difference, (long) RANGE_FACTOR * n - 1) <= 0;
+    }
+
+    /**
+     * 按int key对对象数组稳定排序，key只提取一次，不装箱
+     * 值域较小时计数排序：统计key的个数，前缀和得出每个key的起始位置，按原顺序把对象放到对应位置；
+     * 值域过大时把(key, 下标)打包成long做LSD基数排序，下标本来就是升序，结果同样稳定
+     *
+     * @param key 从对象中提取排序key
+     */
+    public <T> void countSort(T[] array, ToIntFunction<? super T> key) {
+        countSort(array, key, null);
+    }
+
+    /**
+     * 按int key并行稳定排序：每块有自己的计数数组，前缀和按(key, 块号)的顺序累加，
+     * 所以各块可以同时分配而不打乱相同key的原有顺序
+     */
+    public <T> void parallelCountSort(T[] array, ToIntFunction<? super T> key) {
+        countSort(array, key, ForkJoinPool.commonPool());
+    }
+
+    private <T> void countSort(T[] array, ToIntFunction<? super T> key, ForkJoinPool pool) {
+        if (array.length < 2) return;
+        int n = array.length;
+        int[] keys = new int[n];
+        int max = key.applyAsInt(array[0]), min = max;
+        for (int i = 0; i < n; i++) {
+            keys[i] = key.applyAsInt(array[i]);
+            if (keys[i] > max) max = keys[i];
+            if (keys[i] < min) min = keys[i];
+        }
+        if (!smallRange((long) max - min, n)) {
+            // key放高32位、原下标放低32位，下标已经升序，只需稳定地排高4个字节
+            long[] pairs = new long[n];
+            for (int i = 0; i < n; i++) {
+                pairs[i] = ((long) keys[i] << 32) | i;
+            }
+            radixSort.sort(pairs, Integer.BYTES, pool == null ? ForkJoinPool.commonPool() : pool);
+            T[] copy = array.clone();
+            for (int i = 0; i < n; i++) {
+                array[i] = copy[(int) pairs[i]];
+            }
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            keys[i] -= min;
+        }
+        countSort(array, keys, max - min + 1, pool);
+    }
+
+    /**
+     * 按long key对对象数组稳定排序，与countSort(T[], ToIntFunction)同名会让lambda的重载有歧义，所以另外命名
+     * 值域较小时与countSort(T[], ToIntFunction)相同；值域过大时交给KeySort.sortByLong，它同样是稳定的基数排序，
+     * 这时key会再提取一次
+     */
+    public <T> void countSortByLong(T[] array, ToLongFunction<? super T> key) {
+        countSortByLong(array, key, null);
+    }
+
+    public <T> void parallelCountSortByLong(T[] array, ToLongFunction<? super T> key) {
+        countSortByLong(array, key, ForkJoinPool.commonPool());
+    }
+
+    private <T> void countSortByLong(T[] array, ToLongFunction<? super T> key, ForkJoinPool pool) {
+        if (array.length < 2) return;
+        int n = array.length;
+        long[] keys = new long[n];
+        long max = key.applyAsLong(array[0]), min = max;
+        for (int i = 0; i < n; i++) {
+            keys[i] = key.applyAsLong(array[i]);
+            if (keys[i] > max) max = keys[i];
+            if (keys[i] < min) min = keys[i];
+        }
+        if (!smallRange(max - min, n)) {
+            keySort.sortByLong(array, key);
+            return;
+        }
+        int[] offsets = new int[n];
+        for (int i = 0; i < n; i++) {
+            offsets[i] = (int) (keys[i] - min);
         }
-        // 从bucket依次取数，取值为bucket坐标
-        int n = 0;
-        for (int i = 0; i < bucket.length; i++) {
-            while (bucket[i] > 0) {
-                array[n++] = i + min;
-                bucket[i]--;
+        countSort(array, offsets, (int) (max - min + 1), pool);
+    }
+
+    // 按offsets稳定排序对象，offsets[i]是array[i]的key减去最小值，在[0, size)之间
+    private <T> void countSort(T[] array, int[] offsets, int size, ForkJoinPool pool) {
+        int n = array.length;
+        int chunks = chunks(pool, n, size);
+        int[][] buckets = new int[chunks][size];
+        RadixSort.forEachChunk(pool, chunks, t -> {
+            int[] bucket = buckets[t];
+            for (int i = RadixSort.chunkFrom(n, chunks, t), to = RadixSort.chunkFrom(n, chunks, t + 1); i < to; i++) {
+                bucket[offsets[i]]++;
+            }
+        });
+        // 前缀和：同一个key先排块号小的，块内保持原顺序
+        int sum = 0;
+        for (int i = 0; i < size; i++) {
+            for (int t = 0; t < chunks; t++) {
+                int count = buckets[t][i];
+                buckets[t][i] = sum;
+                sum += count;
             }
         }
+        T[] copy = array.clone();
+        RadixSort.forEachChunk(pool, chunks, t -> {
+            int[] next = buckets[t];
+            for (int i = RadixSort.chunkFrom(n, chunks, t), to = RadixSort.chunkFrom(n, chunks, t + 1); i < to; i++) {
+                array[next[offsets[i]]++] = copy[i];
+            }
+        });
     }
 
     public static void main(String[] args) {
@@ -40,5 +262,71 @@ public class CountSort {
         int[] arr = {15, 3, 8, 5, 98, 23, 88, 53, 1, 10, 7, 19};
         sort.countSort(arr);
         System.out.println(Arrays.toString(arr));
+
+        // 状态码这类小值域的key，包括负数
+        int n = 10_000_000;
+        Random random = new Random(42);
+        int[] codes = new int[n];
+        for (int i = 0; i < n; i++) {
+            codes[i] = random.nextInt(600) - 100;
+        }
+        for (int round = 0; round < 3; round++) {
+            int[] expected = codes.clone(), a = codes.clone(), b = codes.clone();
+            long start = System.nanoTime();
+            Arrays.sort(expected);
+            long t1 = System.nanoTime();
+            sort.countSort(a);
+            long t2 = System.nanoTime();
+            sort.parallelCountSort(b);
+            long t3 = System.nanoTime();
+            System.out.printf("Arrays.sort %.1fms，计数排序%.1fms，并行计数排序%.1fms，结果一致：%s%n", (t1 - start) / 1e6,
+                    (t2 - t1) / 1e6, (t3 - t2) / 1e6, Arrays.equals(expected, a) && Arrays.equals(expected, b));
+        }
+        // 值域远大于n时自动改用基数排序
+        int[] wide = {Integer.MAX_VALUE, -5, Integer.MIN_VALUE, 0, 42};
+        sort.countSort(wide);
+        System.out.println(Arrays.toString(wide));
+
+        // 1分钟窗口内的毫秒时间戳，long值域很小
+        long[] timestamps = new long[n];
+        for (int i = 0; i < n; i++) {
+            timestamps[i] = 1_700_000_000_000L + random.nextInt(60_000);
+        }
+        long[] expectedTimestamps = timestamps.clone(), parallelTimestamps = timestamps.clone();
+        Arrays.sort(expectedTimestamps);
+        long begin = System.nanoTime();
+        sort.countSort(timestamps);
+        long elapsed = System.nanoTime() - begin;
+        sort.parallelCountSort(parallelTimestamps);
+        long[] wideLongs = {Long.MAX_VALUE, -5, Long.MIN_VALUE, 0, 42};
+        sort.countSort(wideLongs);
+        System.out.printf("long时间戳计数排序%.1fms，结果一致：%s，全值域：%s%n", elapsed / 1e6,
+                Arrays.equals(expectedTimestamps, timestamps) && Arrays.equals(expectedTimestamps, parallelTimestamps),
+                Arrays.toString(wideLongs));
+
+        // 按分片号稳定排序对象，分片号相同的保持原顺序
+        String[][] records = new String[1_000_000][];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new String[]{String.valueOf(random.nextInt(64)), String.valueOf(i)};
+        }
+        String[][] expected = records.clone(), actual = records.clone(), parallel = records.clone();
+        // Arrays.sort对对象是稳定的
+        Arrays.sort(expected, (x, y) -> Integer.compare(Integer.parseInt(x[0]), Integer.parseInt(y[0])));
+        long start = System.nanoTime();
+        sort.countSort(actual, r -> Integer.parseInt(r[0]));
+        long cost = System.nanoTime() - start;
+        sort.parallelCountSort(parallel, r -> Integer.parseInt(r[0]));
+        // key放大后值域超过RANGE_FACTOR * n，走基数排序，顺序应相同
+        String[][] wideKeys = records.clone();
+        sort.countSort(wideKeys, r -> Integer.parseInt(r[0]) * 30_000_000 - 1_000_000_000);
+        // long key：小值域计数排序，大值域交给KeySort
+        String[][] longKeys = records.clone(), parallelLongKeys = records.clone(), wideLongKeys = records.clone();
+        sort.countSortByLong(longKeys, r -> Long.parseLong(r[0]) + Integer.MAX_VALUE);
+        sort.parallelCountSortByLong(parallelLongKeys, r -> Long.parseLong(r[0]) - Integer.MAX_VALUE);
+        sort.countSortByLong(wideLongKeys, r -> Long.parseLong(r[0]) * (Long.MAX_VALUE / 32) - Long.MAX_VALUE);
+        System.out.printf("按key稳定排序100万个对象：%.1fms，与Arrays.sort一致：%s，大值域一致：%s，long key一致：%s%n",
+                cost / 1e6, Arrays.equals(expected, actual) && Arrays.equals(expected, parallel),
+                Arrays.equals(expected, wideKeys), Arrays.equals(expected, longKeys)
+                        && Arrays.equals(expected, parallelLongKeys) && Arrays.equals(expected, wideLongKeys));
     }
 }
@@ -0,0 +1,302 @@
+package ai.yunxi.sort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 外部排序，对超出堆内存的64位key文件排序
+ * <p>
+ * 文件是连续的大端序long(与DataOutputStream相同)。分两个阶段：
+ * 1.切分：按内存预算把输入分段映射(MappedByteBuffer)读入long[]，用RadixSort并行排序后经FileChannel写成有序的临时文件(run)；
+ * 2.归并：每个run一个大的顺序读缓冲区，用败者树做k路归并，每输出一个key只需log2(k)次比较。
+ * run太多、每路缓冲区会小于MIN_READ_BUFFER时，先把run分组归并成更长的run，再做最后一轮。
+ * 内存预算既限制run的长度(排序时需要run本身和一个同样大小的辅助数组)，也限制归并时所有缓冲区的总大小。
+ */
+public class ExternalSort {
+
+    // 归并时每路读缓冲区的下限，再小顺序读就退化成随机读
+    private static final int MIN_READ_BUFFER = 1 << 16;
+    // 读写文件时每次传输的上限
+    private static final int MAX_IO_BUFFER = 1 << 22;
+
+    private final long memoryBytes;
+    private final Path tempDir;
+    private final ForkJoinPool pool;
+    private final RadixSort radixSort = new RadixSort();
+
+    /**
+     * @param memoryBytes 内存预算，决定run的长度和归并缓冲区的大小
+     * @param tempDir     临时run文件所在的目录
+     */
+    public ExternalSort(long memoryBytes, Path tempDir) {
+        this(memoryBytes, tempDir, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool 排序run所用的线程池
+     */
+    public ExternalSort(long memoryBytes, Path tempDir, ForkJoinPool pool) {
+        if (memoryBytes < 4L * MIN_READ_BUFFER) {
+            throw new RuntimeException("内存预算过小：" + memoryBytes);
+        }
+        this.memoryBytes = memoryBytes;
+        this.tempDir = tempDir;
+        this.pool = pool;
+    }
+
+    /**
+     * 把input中的key升序写入output
+     *
+     * @return key的个数
+     */
+    public long sort(Path input, Path output) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        long count;
+        try {
+            count = split(input, runs);
+            int fanIn = (int) Math.max(2, memoryBytes / 2 / MIN_READ_BUFFER);
+            // run过多时分组归并，直到一轮就能归并完
+            while (runs.size() > fanIn) {
+                List<Path> merged = new ArrayList<>();
+                for (int from = 0; from < runs.size(); from += fanIn) {
+                    List<Path> group = runs.subList(from, Math.min(runs.size(), from + fanIn));
+                    Path run = Files.createTempFile(tempDir, "run", ".bin");
+                    merge(group, run);
+                    for (Path path : group) Files.delete(path);
+                    merged.add(run);
+                }
+                runs = merged;
+            }
+            merge(runs, output);
+        } finally {
+            for (Path run : runs) Files.deleteIfExists(run);
+        }
+        return count;
+    }
+
+    // 按内存预算切分输入，每段排序后写成一个run
+    private long split(Path input, List<Path> runs) throws IOException {
+        // run本身和基数排序的辅助数组各占一半
+        int runLength = (int) Math.min(memoryBytes / 2 / Long.BYTES, Integer.MAX_VALUE - 8);
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size % Long.BYTES != 0) {
+                throw new RuntimeException("文件长度不是8的倍数：" + size);
+            }
+            long count = size / Long.BYTES;
+            long[] keys = new long[(int) Math.min(runLength, count)];
+            long[] scratch = new long[keys.length];
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_IO_BUFFER);
+            for (long offset = 0; offset < count; offset += runLength) {
+                int length = (int) Math.min(runLength, count - offset);
+                // 一次映射一段，按long批量读出
+                MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, offset * Long.BYTES, (long) length * Long.BYTES);
+                mapped.asLongBuffer().get(keys, 0, length);
+                // 最后一段不足runLength时只排序前length个，不另外复制
+                radixSort.sort(keys, length, scratch, pool);
+                Path path = Files.createTempFile(tempDir, "run", ".bin");
+                runs.add(path);
+                try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    write(out, keys, length, buffer);
+                }
+            }
+            return count;
+        }
+    }
+
+    // 经由直接缓冲区buffer分批写出keys[0, length)，buffer由调用方分配一次后反复使用
+    private static void write(FileChannel out, long[] keys, int length, ByteBuffer buffer) throws IOException {
+        // 上次写出后position和limit已移动，先复位再取long视图
+        LongBuffer longs = buffer.clear().asLongBuffer();
+        for (int from = 0; from < length; ) {
+            int batch = Math.min(longs.capacity(), length - from);
+            longs.clear();
+            longs.put(keys, from, batch);
+            buffer.clear().limit(batch * Long.BYTES);
+            while (buffer.hasRemaining()) out.write(buffer);
+            from += batch;
+        }
+    }
+
+    // 用败者树把多个run归并到output
+    private void merge(List<Path> runs, Path output) throws IOException {
+        int k = runs.size();
+        int readBuffer = (int) Math.min(MAX_IO_BUFFER, Math.max(MIN_READ_BUFFER, memoryBytes / 2 / Math.max(1, k)));
+        RunReader[] readers = new RunReader[k];
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < k; i++) {
+                readers[i] = new RunReader(runs.get(i), readBuffer);
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(MAX_IO_BUFFER, memoryBytes / 2));
+            LoserTree tree = new LoserTree(readers);
+            while (!tree.isEmpty()) {
+                if (buffer.remaining() < Long.BYTES) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) out.write(buffer);
+                    buffer.clear();
+                }
+                buffer.putLong(tree.pop());
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) out.write(buffer);
+        } finally {
+            for (RunReader reader : readers) {
+                if (reader != null) reader.close();
+            }
+        }
+    }
+
+    // 顺序读取一个run，带一个大的直接缓冲区
+    private static class RunReader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        long current;
+        boolean exhausted;
+
+        RunReader(Path path, int bufferBytes) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.buffer = ByteBuffer.allocateDirect(bufferBytes - bufferBytes % Long.BYTES);
+            this.buffer.limit(0);
+            advance();
+        }
+
+        // 读出下一个key到current，读完时exhausted置为true
+        void advance() throws IOException {
+            if (buffer.remaining() < Long.BYTES) {
+                buffer.compact();
+                while (buffer.position() < Long.BYTES || buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) break;
+                }
+                buffer.flip();
+                if (buffer.remaining() < Long.BYTES) {
+                    exhausted = true;
+                    return;
+                }
+            }
+            current = buffer.getLong();
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * 败者树：完全二叉树的内部节点记录比赛的败者，tree[0]记录总的胜者
+     * 胜者输出后只需沿它的叶子到根重新比赛一次，每次比较一个节点，共log2(k)次；
+     * 堆的下沉每层要比较两次，败者树在k路归并中比较次数约为堆的一半
+     */
+    private static class LoserTree {
+        private final RunReader[] readers;
+        private final int[] tree;
+        private final int k;
+
+        LoserTree(RunReader[] readers) throws IOException {
+            this.readers = readers;
+            this.k = readers.length;
+            this.tree = new int[Math.max(1, k)];
+            // -1表示还没有参赛者，第一个到达的参赛者暂时停留在节点上
+            Arrays.fill(tree, -1);
+            for (int i = k - 1; i >= 0; i--) {
+                adjust(i);
+            }
+        }
+
+        boolean isEmpty() {
+            return k == 0 || readers[tree[0]].exhausted;
+        }
+
+        long pop() throws IOException {
+            int winner = tree[0];
+            long key = readers[winner].current;
+            readers[winner].advance();
+            adjust(winner);
+            return key;
+        }
+
+        // 叶子i的参赛者从下往上与各节点上的败者比赛，胜者继续向上，败者留在节点上
+        private void adjust(int i) {
+            int winner = i;
+            for (int node = (i + k) / 2; node > 0; node /= 2) {
+                if (tree[node] == -1) {
+                    // 初始化时另一侧还没有参赛者，先停在这里
+                    tree[node] = winner;
+                    return;
+                }
+                if (less(tree[node], winner)) {
+                    int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            tree[0] = winner;
+        }
+
+        // 读完的run视为正无穷
+        private boolean less(int a, int b) {
+            if (readers[a].exhausted) return false;
+            if (readers[b].exhausted) return true;
+            return readers[a].current < readers[b].current;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long keys = args.length > 0 ? (long) Double.parseDouble(args[0]) : 16_000_000;
+        long memoryBytes = (args.length > 1 ? Long.parseLong(args[1]) : 16) << 20;
+        Path dir = Files.createTempDirectory("external-sort");
+        Path input = dir.resolve("input.bin"), output = dir.resolve("output.bin");
+        try {
+            // 生成随机key，顺便求和用于校验
+            Random random = new Random(42);
+            long checksum = 0;
+            try (FileChannel out = FileChannel.open(input, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                long[] batch = new long[1 << 20];
+                ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_IO_BUFFER);
+                for (long written = 0; written < keys; written += batch.length) {
+                    int length = (int) Math.min(batch.length, keys - written);
+                    for (int i = 0; i < length; i++) {
+                        batch[i] = random.nextLong();
+                        checksum += batch[i];
+                    }
+                    write(out, batch, length, buffer);
+                }
+            }
+
+            long start = System.nanoTime();
+            long count = new ExternalSort(memoryBytes, dir).sort(input, output);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double megabytes = count * Long.BYTES / 1e6;
+            System.out.printf("%,d个key(%.0fMB)，内存预算%dMB，%d个run：%.2fs，%.1fMB/s%n", count, megabytes,
+                    memoryBytes >> 20, (count + memoryBytes / 16 - 1) / (memoryBytes / 16), seconds, megabytes / seconds);
+
+            // 校验升序、个数和总和
+            long sum = 0, previous = Long.MIN_VALUE, n = 0;
+            boolean ordered = true;
+            RunReader reader = new RunReader(output, MAX_IO_BUFFER);
+            for (; !reader.exhausted; reader.advance(), n++) {
+                ordered &= reader.current >= previous;
+                previous = reader.current;
+                sum += reader.current;
+            }
+            reader.close();
+            System.out.println("有序：" + ordered + "，个数一致：" + (n == keys) + "，总和一致：" + (sum == checksum)
+                    + "，文件大小一致：" + (Files.size(output) == keys * Long.BYTES));
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(dir);
+        }
+    }
+}
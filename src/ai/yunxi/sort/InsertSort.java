@@ -12,11 +12,18 @@ public class InsertSort {
      * 从后向前找到合适位置后，直到全部插入排序完为止。
      */
     public void directInsert(int[] array) {
-        for (int i = 1; i < array.length; i++) {
+        directInsert(array, 0, array.length);
+    }
+
+    /**
+     * 对array[from, to)直接插入排序，供快速排序等算法处理小区间
+     */
+    public void directInsert(int[] array, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
             // 待插入元素
             int temp = array[i];
             int j;
-            for (j = i - 1; j >= 0 && array[j] > temp; j--) {
+            for (j = i - 1; j >= from && array[j] > temp; j--) {
                 // 将大于temp的往后移动一位
                 array[j + 1] = array[j];
             }
@@ -30,13 +37,21 @@ public class InsertSort {
      * 二分法插入排序的思想和直接插入一样，只是找合适的插入位置的方式不同，这里是按二分法找到合适的位置，可以减少比较的次数。
      */
     public void dichotomy(int[] array) {
-        for (int i = 0; i < array.length; i++) {
+        dichotomy(array, 0, 0, array.length);
+    }
+
+    /**
+     * 对array[from, to)二分插入排序，其中[from, sorted)已经有序，从sorted开始逐个插入
+     * 相等的元素插在已有元素之后，排序是稳定的；供自适应归并排序把短run补齐到最小长度
+     */
+    public void dichotomy(int[] array, int from, int sorted, int to) {
+        for (int i = Math.max(sorted, from); i < to; i++) {
             int temp = array[i];
-            int left = 0;
+            int left = from;
             int right = i - 1;
             int mid;
             while (left <= right) {
-                mid = (left + right) / 2;
+                mid = (left + right) >>> 1;
                 if (temp < array[mid]) {
                     right = mid - 1;
                 } else {
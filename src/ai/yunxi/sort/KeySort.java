@@ -0,0 +1,243 @@
+package ai.yunxi.sort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+// 按key排序对象数组
+public class KeySort {
+
+    private final RadixSort radixSort = new RadixSort();
+
+    /**
+     * 按int key稳定排序，命名同Comparator.comparingInt，避免int和long的lambda重载有歧义
+     * <p>
+     * 每个对象只提取一次key，key放高32位、下标放低32位打包成long，用基数排序只排高4个字节；
+     * 下标本来就是升序，LSD基数排序又是稳定的，所以相同key保持原顺序。
+     * 最后按排好的下标一趟置换对象，不比较对象、不装箱。
+     */
+    public <T> void sortByInt(T[] items, ToIntFunction<? super T> key) {
+        long[] packed = packInt(items, key);
+        radixSort.sort(packed, Integer.BYTES, ForkJoinPool.commonPool());
+        permute(items, packed, Integer.SIZE);
+    }
+
+    /**
+     * 按int key排序，不保证稳定
+     * 打包方式同sortByInt，改用原地的Arrays.sort(long[])，省去基数排序与数据等长的辅助数组
+     */
+    public <T> void sortByIntUnstable(T[] items, ToIntFunction<? super T> key) {
+        long[] packed = packInt(items, key);
+        Arrays.sort(packed);
+        permute(items, packed, Integer.SIZE);
+    }
+
+    /**
+     * 按long key稳定排序
+     * <p>
+     * 下标需要ceil(log2(n))位，key的值域(max - min)能放进剩下的位时，把(key - min, 下标)打包成一个long，
+     * 排序方式同sortByInt；时间戳这类值域有限的key都属于这种情况。
+     * 值域放不下时，key和下标分别放在两个数组里一起做LSD基数排序。
+     */
+    public <T> void sortByLong(T[] items, ToLongFunction<? super T> key) {
+        sortBy(items, key, true);
+    }
+
+    /**
+     * 按long key排序，不保证稳定
+     * 能打包时用原地的Arrays.sort(long[])，否则与sortByLong相同
+     */
+    public <T> void sortByLongUnstable(T[] items, ToLongFunction<? super T> key) {
+        sortBy(items, key, false);
+    }
+
+    private <T> void sortBy(T[] items, ToLongFunction<? super T> key, boolean stable) {
+        int n = items.length;
+        if (n < 2) return;
+        long[] keys = new long[n];
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            keys[i] = key.applyAsLong(items[i]);
+            min = Math.min(min, keys[i]);
+            max = Math.max(max, keys[i]);
+        }
+        int indexBits = Integer.SIZE - Integer.numberOfLeadingZeros(n - 1);
+        long range = max - min;
+        // range按无符号数看，最高位之外只剩63 - indexBits位给key
+        if (range >>> (Long.SIZE - 1 - indexBits) == 0) {
+            long[] packed = keys;
+            for (int i = 0; i < n; i++) {
+                packed[i] = ((keys[i] - min) << indexBits) | i;
+            }
+            if (stable) {
+                // 完全由下标组成的低字节不用排
+                radixSort.sort(packed, indexBits / Byte.SIZE, ForkJoinPool.commonPool());
+            } else {
+                Arrays.sort(packed);
+            }
+            permute(items, packed, indexBits);
+        } else {
+            int[] index = new int[n];
+            for (int i = 0; i < n; i++) index[i] = i;
+            radixSort(keys, index);
+            permute(items, index);
+        }
+    }
+
+    private static <T> long[] packInt(T[] items, ToIntFunction<? super T> key) {
+        long[] packed = new long[items.length];
+        for (int i = 0; i < items.length; i++) {
+            packed[i] = ((long) key.applyAsInt(items[i]) << Integer.SIZE) | i;
+        }
+        return packed;
+    }
+
+    // 256进制LSD基数排序，index跟随keys移动，同RadixSort.sort(long[])
+    private static void radixSort(long[] keys, int[] index) {
+        int n = keys.length;
+        int[][] counts = new int[Long.BYTES][256];
+        for (long key : keys) {
+            long flipped = key ^ Long.MIN_VALUE;
+            for (int pass = 0; pass < Long.BYTES; pass++) {
+                counts[pass][(int) (flipped >>> (pass * Byte.SIZE)) & 0xFF]++;
+            }
+        }
+        long[] keySrc = keys, keyDst = new long[n];
+        int[] indexSrc = index, indexDst = new int[n];
+        for (int pass = 0; pass < Long.BYTES; pass++) {
+            int[] count = counts[pass];
+            int shift = pass * Byte.SIZE;
+            int sum = 0;
+            boolean uniform = false;
+            for (int digit = 0; digit < 256; digit++) {
+                if (count[digit] == n) uniform = true;
+                int c = count[digit];
+                count[digit] = sum;
+                sum += c;
+            }
+            if (uniform) continue;
+            for (int i = 0; i < n; i++) {
+                int position = count[(int) ((keySrc[i] ^ Long.MIN_VALUE) >>> shift) & 0xFF]++;
+                keyDst[position] = keySrc[i];
+                indexDst[position] = indexSrc[i];
+            }
+            long[] keyTemp = keySrc;
+            keySrc = keyDst;
+            keyDst = keyTemp;
+            int[] indexTemp = indexSrc;
+            indexSrc = indexDst;
+            indexDst = indexTemp;
+        }
+        if (indexSrc != index) System.arraycopy(indexSrc, 0, index, 0, n);
+    }
+
+    /**
+     * 按排好序的下标原地置换：位置i最终放原来的items[p(i)]
+     * 沿置换的环移动对象，每个对象只移动一次；处理过的位置把下标改成自身作为标记
+     *
+     * @param indexBits 下标在packed中占的低位数
+     */
+    private static <T> void permute(T[] items, long[] packed, int indexBits) {
+        long mask = indexBits == Integer.SIZE ? 0xFFFF_FFFFL : (1L << indexBits) - 1;
+        for (int start = 0; start < items.length; start++) {
+            if ((int) (packed[start] & mask) == start) continue;
+            T first = items[start];
+            int i = start;
+            while (true) {
+                int from = (int) (packed[i] & mask);
+                packed[i] = (packed[i] & ~mask) | i;
+                if (from == start) {
+                    items[i] = first;
+                    break;
+                }
+                items[i] = items[from];
+                i = from;
+            }
+        }
+    }
+
+    private static <T> void permute(T[] items, int[] index) {
+        for (int start = 0; start < items.length; start++) {
+            if (index[start] == start) continue;
+            T first = items[start];
+            int i = start;
+            while (true) {
+                int from = index[i];
+                index[i] = i;
+                if (from == start) {
+                    items[i] = first;
+                    break;
+                }
+                items[i] = items[from];
+                i = from;
+            }
+        }
+    }
+
+    // 基准测试用的记录
+    private static class Record {
+        final int shard;
+        final long timestamp;
+        final long id;
+
+        Record(int shard, long timestamp, long id) {
+            this.shard = shard;
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Random random = new Random(42);
+        Record[] records = new Record[n];
+        long now = 1_700_000_000_000L;
+        for (int i = 0; i < n; i++) {
+            records[i] = new Record(random.nextInt(), now + random.nextInt(86_400_000), random.nextLong());
+        }
+        KeySort sort = new KeySort();
+
+        System.out.printf("%-36s %12s %10s%n", "方式", "耗时(ms)", "正确");
+        // 每组：对照用的Comparator，以及稳定、不稳定两种按key排序
+        Object[][] cases = {
+                {"int key(shard)", Comparator.comparingInt((Record r) -> r.shard)},
+                {"long key(timestamp，可打包)", Comparator.comparingLong((Record r) -> r.timestamp)},
+                {"long key(id，全值域)", Comparator.comparingLong((Record r) -> r.id)},
+        };
+        for (int c = 0; c < cases.length; c++) {
+            @SuppressWarnings("unchecked")
+            Comparator<Record> comparator = (Comparator<Record>) cases[c][1];
+            long[] costs = new long[3];
+            Arrays.fill(costs, Long.MAX_VALUE);
+            boolean stableSame = true, unstableOrdered = true;
+            for (int round = 0; round < 5; round++) {
+                Record[] expected = records.clone(), stable = records.clone(), unstable = records.clone();
+                long start = System.nanoTime();
+                Arrays.sort(expected, comparator);
+                long t1 = System.nanoTime();
+                if (c == 0) sort.sortByInt(stable, r -> r.shard);
+                else if (c == 1) sort.sortByLong(stable, r -> r.timestamp);
+                else sort.sortByLong(stable, r -> r.id);
+                long t2 = System.nanoTime();
+                if (c == 0) sort.sortByIntUnstable(unstable, r -> r.shard);
+                else if (c == 1) sort.sortByLongUnstable(unstable, r -> r.timestamp);
+                else sort.sortByLongUnstable(unstable, r -> r.id);
+                long t3 = System.nanoTime();
+                costs[0] = Math.min(costs[0], t1 - start);
+                costs[1] = Math.min(costs[1], t2 - t1);
+                costs[2] = Math.min(costs[2], t3 - t2);
+                // Arrays.sort对对象是稳定的，稳定版本应逐个对象相同
+                stableSame &= Arrays.equals(expected, stable);
+                for (int i = 1; i < n; i++) {
+                    unstableOrdered &= comparator.compare(unstable[i - 1], unstable[i]) <= 0;
+                }
+            }
+            System.out.printf("%-36s %12.1f %10s%n", cases[c][0] + " Arrays.sort(Comparator)", costs[0] / 1e6, "-");
+            System.out.printf("%-36s %12.1f %10s%n", cases[c][0] + " 稳定", costs[1] / 1e6, stableSame);
+            System.out.printf("%-36s %12.1f %10s%n", cases[c][0] + " 不稳定", costs[2] / 1e6, unstableOrdered);
+        }
+    }
+}
@@ -1,10 +1,25 @@
 package ai.yunxi.sort;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 // 归并排序
 public class MergeSort {
 
+    // 区间长度不超过该值时改用直接插入排序
+    private static final int INSERTION_THRESHOLD = 32;
+    // 并行排序中区间长度不超过该值时不再拆分任务
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+    // 并行归并中两段总长度不超过该值时顺序归并
+    private static final int MERGE_THRESHOLD = 1 << 14;
+    // 自适应归并排序中，数组短于该值时只做一次二分插入排序
+    private static final int MIN_MERGE = 32;
+    // 归并时一侧连续胜出这么多次后进入galloping，批量复制
+    private static final int MIN_GALLOP = 7;
+
+    private final InsertSort insertSort = new InsertSort();
+
     /**
      * 归并排序
      * <p>
@@ -21,6 +36,415 @@ public class MergeSort {
         return merge(mergeSort(left), mergeSort(right));
     }
 
+    /**
+     * 原地接口的归并排序，排序结果写回array
+     * <p>
+     * 只分配一个与array等长的辅助数组，两个数组轮流作为源和目标(ping-pong)：
+     * 把左右两半排序到辅助数组，再归并回原数组，每一层都不需要复制。
+     * 左半的最大值不大于右半的最小值时两半已经有序，直接整段复制代替归并。
+     */
+    public void sort(int[] array) {
+        if (array.length < 2) return;
+        // 两个数组开始时内容相同，插入排序可以在任意一层的目标数组上直接进行
+        int[] aux = array.clone();
+        sort(aux, array, 0, array.length);
+    }
+
+    /**
+     * 并行归并排序，使用公共ForkJoinPool
+     */
+    public void parallelSort(int[] array) {
+        parallelSort(array, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 并行归并排序，左右两半作为子任务并行排序，归并也按二分查找拆成子任务并行进行
+     *
+     * @param pool 执行排序的线程池，并行度即使用的核数
+     */
+    public void parallelSort(int[] array, ForkJoinPool pool) {
+        if (array.length <= SEQUENTIAL_THRESHOLD) {
+            sort(array);
+            return;
+        }
+        int[] aux = array.clone();
+        pool.invoke(new SortTask(aux, array, 0, array.length));
+    }
+
+    // 把src[from, to)排序到dst[from, to)，调用前两段内容相同，src用作下一层的目标
+    private void sort(int[] src, int[] dst, int from, int to) {
+        if (to - from <= INSERTION_THRESHOLD) {
+            insertSort.directInsert(dst, from, to);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(dst, src, from, mid);
+        sort(dst, src, mid, to);
+        if (src[mid - 1] <= src[mid]) {
+            System.arraycopy(src, from, dst, from, to - from);
+            return;
+        }
+        merge(src, from, mid, src, mid, to, dst, from);
+    }
+
+    // 把有序的a[aFrom, aTo)和b[bFrom, bTo)归并到dst，从dstFrom开始
+    private static void merge(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] dst, int dstFrom) {
+        int i = aFrom, j = bFrom, k = dstFrom;
+        while (i < aTo && j < bTo) {
+            // 相等时取左边，保持稳定
+            dst[k++] = b[j] < a[i] ? b[j++] : a[i++];
+        }
+        if (i < aTo) System.arraycopy(a, i, dst, k, aTo - i);
+        if (j < bTo) System.arraycopy(b, j, dst, k, bTo - j);
+    }
+
+    // 并行排序的子任务，与sort(src, dst, from, to)的约定相同
+    private class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] src, dst;
+        private final int from, to;
+
+        SortTask(int[] src, int[] dst, int from, int to) {
+            this.src = src;
+            this.dst = dst;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                sort(src, dst, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SortTask(dst, src, from, mid), new SortTask(dst, src, mid, to));
+            if (src[mid - 1] <= src[mid]) {
+                System.arraycopy(src, from, dst, from, to - from);
+                return;
+            }
+            new MergeTask(src, from, mid, mid, to, dst, from).compute();
+        }
+    }
+
+    /**
+     * 并行归并的子任务
+     * 取较长一段的中间元素x，在另一段中二分查找x的位置，两段各自一分为二，
+     * 前两部分都不大于x、后两部分都不小于x，于是前后两对可以独立并行归并，且目标位置可以直接算出
+     */
+    private static class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] src, dst;
+        private final int aFrom, aTo, bFrom, bTo, dstFrom;
+
+        MergeTask(int[] src, int aFrom, int aTo, int bFrom, int bTo, int[] dst, int dstFrom) {
+            this.src = src;
+            this.aFrom = aFrom;
+            this.aTo = aTo;
+            this.bFrom = bFrom;
+            this.bTo = bTo;
+            this.dst = dst;
+            this.dstFrom = dstFrom;
+        }
+
+        @Override
+        protected void compute() {
+            int aLength = aTo - aFrom, bLength = bTo - bFrom;
+            if (aLength + bLength <= MERGE_THRESHOLD) {
+                merge(src, aFrom, aTo, src, bFrom, bTo, dst, dstFrom);
+                return;
+            }
+            int aMid, bMid;
+            if (aLength >= bLength) {
+                aMid = (aFrom + aTo) >>> 1;
+                // b中小于x的在前，等于x的在后，a中的x排在b中的x之前
+                bMid = lowerBound(src, bFrom, bTo, src[aMid]);
+            } else {
+                bMid = (bFrom + bTo) >>> 1;
+                // a中不大于x的在前
+                aMid = upperBound(src, aFrom, aTo, src[bMid]);
+            }
+            int dstMid = dstFrom + (aMid - aFrom) + (bMid - bFrom);
+            invokeAll(new MergeTask(src, aFrom, aMid, bFrom, bMid, dst, dstFrom),
+                    new MergeTask(src, aMid, aTo, bMid, bTo, dst, dstMid));
+        }
+    }
+
+    // 第一个不小于key的下标
+    private static int lowerBound(int[] array, int from, int to, int key) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (array[mid] < key) from = mid + 1;
+            else to = mid;
+        }
+        return from;
+    }
+
+    // 第一个大于key的下标
+    private static int upperBound(int[] array, int from, int to, int key) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (array[mid] <= key) from = mid + 1;
+            else to = mid;
+        }
+        return from;
+    }
+
+    /**
+     * 自适应归并排序(Timsort的思路)，对部分有序的输入接近O(n)
+     * <p>
+     * 1.从左到右识别自然有序的run：非降序的直接使用，严格降序的原地翻转(严格降序翻转后依然稳定)；
+     * 2.短于minRun的run用二分插入排序补齐到minRun，minRun在16~32之间，使run的个数接近2的幂，归并更均衡；
+     * 3.run压入栈中，维持栈中相邻run长度的不变式，长度相近的run才归并；
+     * 4.归并前先用二分查找去掉两个run中已经就位的头尾，只把较短的一个复制到临时数组；
+     * 归并中一侧连续胜出MIN_GALLOP次后改为指数查找(galloping)，把一整段一次复制过去。
+     * 完全有序或完全逆序的输入只需要n - 1次比较。
+     */
+    public void adaptiveSort(int[] array) {
+        int n = array.length;
+        if (n < 2) return;
+        if (n < MIN_MERGE) {
+            int run = countRunAndMakeAscending(array, 0, n);
+            insertSort.dichotomy(array, 0, run, n);
+            return;
+        }
+        RunMerger merger = new RunMerger(array);
+        int minRun = minRunLength(n);
+        int low = 0;
+        while (low < n) {
+            int run = countRunAndMakeAscending(array, low, n);
+            if (run < minRun) {
+                int force = Math.min(n - low, minRun);
+                insertSort.dichotomy(array, low, low + run, low + force);
+                run = force;
+            }
+            merger.push(low, run);
+            merger.mergeCollapse();
+            low += run;
+        }
+        merger.mergeForceCollapse();
+    }
+
+    // 从from开始的自然run的长度，严格降序的run翻转为升序
+    private static int countRunAndMakeAscending(int[] array, int from, int to) {
+        int end = from + 1;
+        if (end == to) return 1;
+        if (array[end++] < array[from]) {
+            while (end < to && array[end] < array[end - 1]) end++;
+            for (int l = from, h = end - 1; l < h; l++, h--) {
+                int temp = array[l];
+                array[l] = array[h];
+                array[h] = temp;
+            }
+        } else {
+            while (end < to && array[end] >= array[end - 1]) end++;
+        }
+        return end - from;
+    }
+
+    // n不断右移到小于MIN_MERGE，移出的位中有1则结果加1，使n / minRun接近且不超过2的幂
+    private static int minRunLength(int n) {
+        int r = 0;
+        while (n >= MIN_MERGE) {
+            r |= n & 1;
+            n >>= 1;
+        }
+        return n + r;
+    }
+
+    // 自适应归并排序一次调用的状态：run栈和临时数组
+    private static class RunMerger {
+        private final int[] array;
+        private int[] tmp = new int[0];
+        // 长度为int的数组，满足不变式的run栈不会超过49层
+        private final int[] runBase = new int[49];
+        private final int[] runLength = new int[49];
+        private int stackSize;
+
+        RunMerger(int[] array) {
+            this.array = array;
+        }
+
+        void push(int base, int length) {
+            runBase[stackSize] = base;
+            runLength[stackSize] = length;
+            stackSize++;
+        }
+
+        /**
+         * 维持不变式：runLength[i - 2] > runLength[i - 1] + runLength[i]，runLength[i - 1] > runLength[i]
+         * 同时检查再往下一层，避免只检查栈顶三个时不变式在更深处被破坏
+         */
+        void mergeCollapse() {
+            while (stackSize > 1) {
+                int n = stackSize - 2;
+                if (n > 0 && runLength[n - 1] <= runLength[n] + runLength[n + 1]
+                        || n > 1 && runLength[n - 2] <= runLength[n] + runLength[n - 1]) {
+                    if (runLength[n - 1] < runLength[n + 1]) n--;
+                } else if (runLength[n] > runLength[n + 1]) {
+                    break;
+                }
+                mergeAt(n);
+            }
+        }
+
+        void mergeForceCollapse() {
+            while (stackSize > 1) {
+                int n = stackSize - 2;
+                if (n > 0 && runLength[n - 1] < runLength[n + 1]) n--;
+                mergeAt(n);
+            }
+        }
+
+        // 归并栈中第i和i + 1个run
+        private void mergeAt(int i) {
+            int base1 = runBase[i], length1 = runLength[i];
+            int base2 = runBase[i + 1], length2 = runLength[i + 1];
+            runLength[i] = length1 + length2;
+            if (i == stackSize - 3) {
+                runBase[i + 1] = runBase[i + 2];
+                runLength[i + 1] = runLength[i + 2];
+            }
+            stackSize--;
+
+            // run1中不大于run2第一个元素的前缀已经就位
+            int start = gallop(array, base1, base1 + length1, array[base2], true, false);
+            length1 -= start - base1;
+            base1 = start;
+            if (length1 == 0) return;
+            // run2中不小于run1最后一个元素的后缀已经就位
+            length2 = gallop(array, base2, base2 + length2, array[base1 + length1 - 1], false, true) - base2;
+            if (length2 == 0) return;
+
+            if (length1 <= length2) {
+                mergeLow(base1, length1, base2, length2);
+            } else {
+                mergeHigh(base1, length1, base2, length2);
+            }
+        }
+
+        private int[] ensureCapacity(int length) {
+            if (tmp.length < length) {
+                tmp = new int[Math.max(length, Math.min(array.length / 2, tmp.length * 2))];
+            }
+            return tmp;
+        }
+
+        // run1较短：复制run1到tmp，从前往后归并
+        private void mergeLow(int base1, int length1, int base2, int length2) {
+            int[] a = array, t = ensureCapacity(length1);
+            System.arraycopy(a, base1, t, 0, length1);
+            int c1 = 0, end1 = length1, c2 = base2, end2 = base2 + length2, dest = base1;
+            int wins1 = 0, wins2 = 0;
+            while (c1 < end1 && c2 < end2) {
+                if (a[c2] < t[c1]) {
+                    a[dest++] = a[c2++];
+                    wins1 = 0;
+                    if (++wins2 >= MIN_GALLOP && c2 < end2) {
+                        // run2中小于t[c1]的一段整体前移
+                        int k = gallop(a, c2, end2, t[c1], false, false) - c2;
+                        System.arraycopy(a, c2, a, dest, k);
+                        dest += k;
+                        c2 += k;
+                        wins2 = 0;
+                    }
+                } else {
+                    a[dest++] = t[c1++];
+                    wins2 = 0;
+                    if (++wins1 >= MIN_GALLOP && c1 < end1) {
+                        // tmp中不大于a[c2]的一段整体复制，相等时run1在前
+                        int k = gallop(t, c1, end1, a[c2], true, false) - c1;
+                        System.arraycopy(t, c1, a, dest, k);
+                        dest += k;
+                        c1 += k;
+                        wins1 = 0;
+                    }
+                }
+            }
+            // run2剩下的已经在原位
+            System.arraycopy(t, c1, a, dest, end1 - c1);
+        }
+
+        // run2较短：复制run2到tmp，从后往前归并
+        private void mergeHigh(int base1, int length1, int base2, int length2) {
+            int[] a = array, t = ensureCapacity(length2);
+            System.arraycopy(a, base2, t, 0, length2);
+            int c1 = base1 + length1 - 1, c2 = length2 - 1, dest = base2 + length2 - 1;
+            int wins1 = 0, wins2 = 0;
+            while (c1 >= base1 && c2 >= 0) {
+                if (a[c1] > t[c2]) {
+                    a[dest--] = a[c1--];
+                    wins2 = 0;
+                    if (++wins1 >= MIN_GALLOP && c1 >= base1) {
+                        // run1中大于t[c2]的一段整体后移
+                        int k = c1 + 1 - gallop(a, base1, c1 + 1, t[c2], true, true);
+                        System.arraycopy(a, c1 - k + 1, a, dest - k + 1, k);
+                        dest -= k;
+                        c1 -= k;
+                        wins1 = 0;
+                    }
+                } else {
+                    // 相等时run2的元素放在后面
+                    a[dest--] = t[c2--];
+                    wins1 = 0;
+                    if (++wins2 >= MIN_GALLOP && c2 >= 0) {
+                        // tmp中不小于a[c1]的一段整体复制
+                        int k = c2 + 1 - gallop(t, 0, c2 + 1, a[c1], false, true);
+                        System.arraycopy(t, c2 - k + 1, a, dest - k + 1, k);
+                        dest -= k;
+                        c2 -= k;
+                        wins2 = 0;
+                    }
+                }
+            }
+            // run1剩下的已经在原位
+            System.arraycopy(t, 0, a, dest - c2, c2 + 1);
+        }
+    }
+
+    /**
+     * 指数查找(galloping)：在有序的array[from, to)中找第一个大于key(inclusive)或不小于key的位置
+     * 从一端开始按1、2、4、8……的步长试探，确定范围后再二分，目标离起点为k时只需O(log k)次比较
+     *
+     * @param inclusive true时等于key的元素算在前面
+     * @param fromEnd   从右端开始试探
+     */
+    private static int gallop(int[] array, int from, int to, int key, boolean inclusive, boolean fromEnd) {
+        int low, high;
+        if (!fromEnd) {
+            low = from;
+            int probe = from, step = 1;
+            while (probe < to && before(array[probe], key, inclusive)) {
+                low = probe + 1;
+                step <<= 1;
+                probe = from + step - 1;
+            }
+            high = Math.min(probe, to);
+        } else {
+            high = to;
+            int probe = to - 1, step = 1;
+            while (probe >= from && !before(array[probe], key, inclusive)) {
+                high = probe;
+                step <<= 1;
+                probe = to - step;
+            }
+            low = Math.max(probe + 1, from);
+        }
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (before(array[mid], key, inclusive)) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    // value应排在key之前
+    private static boolean before(int value, int key, boolean inclusive) {
+        return inclusive ? value <= key : value < key;
+    }
+
     // 将两组排序好的数组合并成一个
     private int[] merge(int[] left, int[] right) {
         int[] result = new int[left.length + right.length];
@@ -42,5 +466,10 @@ public class MergeSort {
         MergeSort sort = new MergeSort();
         int[] arr = {15, 3, 8, 5, 98, 23, 88, 53, 1, 10, 7, 19};
         System.out.println(Arrays.toString(sort.mergeSort(arr)));
+        sort.parallelSort(arr);
+        System.out.println(Arrays.toString(arr));
+        int[] reversed = {98, 88, 53, 23, 19, 15, 10, 8, 7, 5, 3, 1};
+        sort.adaptiveSort(reversed);
+        System.out.println(Arrays.toString(reversed));
     }
 }
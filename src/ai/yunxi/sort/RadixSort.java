@@ -3,10 +3,24 @@ package ai.yunxi.sort;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
 
 // 基数排序
 public class RadixSort {
 
+    // 每趟处理8位，256个桶的计数数组正好放进L1缓存
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int MASK = RADIX - 1;
+    // 长度不超过该值时直接插入排序更快
+    private static final int INSERTION_THRESHOLD = 64;
+    // 长度超过该值且线程池并行度大于1时，按块并行计数和分配
+    private static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    private final InsertSort insertSort = new InsertSort();
+
     /**
      * 将所有待比较数值（正整数）统一为同样的数位长度，数位较短的数前面补零。
      * 然后，从最低位开始，依次进行一次排序。
@@ -29,11 +43,12 @@ public class RadixSort {
         for (int i = 0; i < 10; i++) {
             buckets.add(new ArrayList<>());
         }
-        // 进行digit次分配和收集
-        for (int i = 0; i < digit; i++) {
-            // 将数据按每一位上的数值分配
+        // 进行digit次分配和收集，radix为当前位的权重
+        long radix = 1;
+        for (int i = 0; i < digit; i++, radix *= 10) {
+            // 将数据按每一位上的数值分配，(int) Math.pow(10, 10)会截断为Integer.MAX_VALUE，所以用long
             for (int value : array) {
-                int index = value % (int) Math.pow(10, i + 1) / (int) Math.pow(10, i);
+                int index = (int) (value / radix % 10);
                 buckets.get(index).add(value);
             }
             // 按顺序收集
@@ -47,10 +62,281 @@ public class RadixSort {
         }
     }
 
+    /**
+     * 256进制的LSD基数排序，支持负数
+     * <p>
+     * 把int的符号位取反后按无符号数比较，顺序与有符号比较相同，所以负数排在正数前面。
+     * 先一趟扫描统计出全部4个字节的计数，再从最低字节开始每趟做一次前缀和、一次分配，
+     * 在原数组和一个辅助数组之间来回分配；某个字节上所有元素都相同时跳过这一趟。
+     * 大数组在ForkJoinPool公共池中并行计数和分配。
+     */
+    public void sort(int[] array) {
+        sort(array, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool 大数组并行计数和分配所用的线程池
+     */
+    public void sort(int[] array, ForkJoinPool pool) {
+        int n = array.length;
+        if (n <= INSERTION_THRESHOLD) {
+            insertSort.directInsert(array);
+            return;
+        }
+        int passes = Integer.SIZE / RADIX_BITS;
+        int chunks = n >= PARALLEL_THRESHOLD ? pool.getParallelism() : 1;
+        int[][][] counts = new int[chunks][passes][RADIX];
+        forEachChunk(pool, chunks, t -> {
+            int[][] count = counts[t];
+            for (int i = chunkFrom(n, chunks, t), to = chunkFrom(n, chunks, t + 1); i < to; i++) {
+                int key = array[i] ^ Integer.MIN_VALUE;
+                for (int pass = 0; pass < passes; pass++) {
+                    count[pass][(key >>> (pass * RADIX_BITS)) & MASK]++;
+                }
+            }
+        });
+
+        int[] src = array, dst = new int[n];
+        boolean scattered = false;
+        for (int pass = 0; pass < passes; pass++) {
+            if (uniform(counts, pass, n)) continue;
+            int shift = pass * RADIX_BITS;
+            if (scattered && chunks > 1) {
+                // 之前的分配改变了元素在各块中的分布，重新按块统计这一趟的字节
+                int[] current = src;
+                forEachChunk(pool, chunks, t -> {
+                    int[] count = counts[t][shift / RADIX_BITS];
+                    Arrays.fill(count, 0);
+                    for (int i = chunkFrom(n, chunks, t), to = chunkFrom(n, chunks, t + 1); i < to; i++) {
+                        count[((current[i] ^ Integer.MIN_VALUE) >>> shift) & MASK]++;
+                    }
+                });
+            }
+            int[][] offsets = offsets(counts, pass);
+            int[] from = src, to = dst;
+            forEachChunk(pool, chunks, t -> {
+                int[] offset = offsets[t];
+                for (int i = chunkFrom(n, chunks, t), end = chunkFrom(n, chunks, t + 1); i < end; i++) {
+                    int value = from[i];
+                    to[offset[((value ^ Integer.MIN_VALUE) >>> shift) & MASK]++] = value;
+                }
+            });
+            dst = src;
+            src = to;
+            scattered = true;
+        }
+        if (src != array) System.arraycopy(src, 0, array, 0, n);
+    }
+
+    /**
+     * 256进制的LSD基数排序，与sort(int[])相同，共8趟
+     */
+    public void sort(long[] array) {
+        sort(array, ForkJoinPool.commonPool());
+    }
+
+    public void sort(long[] array, ForkJoinPool pool) {
+        sort(array, 0, pool);
+    }
+
+    /**
+     * 只按第firstPass个字节及更高的字节排序，低字节的顺序保持输入中的相对顺序
+     * 用于(key, 下标)打包成的long：下标在低位，输入已按下标升序，稳定地只排key所在的字节即可
+     */
+    void sort(long[] array, int firstPass, ForkJoinPool pool) {
+        sort(array, array.length, firstPass, null, pool);
+    }
+
+    /**
+     * 只排序array[0, length)，scratch为长度不小于length的辅助数组，为null时新分配
+     * 用于外部排序反复排序长度不一的run，run和辅助数组都只分配一次
+     */
+    void sort(long[] array, int length, long[] scratch, ForkJoinPool pool) {
+        sort(array, length, 0, scratch, pool);
+    }
+
+    private void sort(long[] array, int length, int firstPass, long[] scratch, ForkJoinPool pool) {
+        int n = length;
+        if (n <= INSERTION_THRESHOLD) {
+            // 插入排序是稳定的，只比较高位
+            int shift = firstPass * RADIX_BITS;
+            for (int i = 1; i < n; i++) {
+                long temp = array[i];
+                int j;
+                for (j = i - 1; j >= 0 && (array[j] >> shift) > (temp >> shift); j--) {
+                    array[j + 1] = array[j];
+                }
+                array[j + 1] = temp;
+            }
+            return;
+        }
+        int passes = Long.SIZE / RADIX_BITS;
+        int chunks = n >= PARALLEL_THRESHOLD ? pool.getParallelism() : 1;
+        int[][][] counts = new int[chunks][passes][RADIX];
+        forEachChunk(pool, chunks, t -> {
+            int[][] count = counts[t];
+            for (int i = chunkFrom(n, chunks, t), to = chunkFrom(n, chunks, t + 1); i < to; i++) {
+                long key = array[i] ^ Long.MIN_VALUE;
+                for (int pass = firstPass; pass < passes; pass++) {
+                    count[pass][(int) (key >>> (pass * RADIX_BITS)) & MASK]++;
+                }
+            }
+        });
+
+        long[] src = array, dst = scratch != null ? scratch : new long[n];
+        boolean scattered = false;
+        for (int pass = firstPass; pass < passes; pass++) {
+            if (uniform(counts, pass, n)) continue;
+            int shift = pass * RADIX_BITS;
+            if (scattered && chunks > 1) {
+                long[] current = src;
+                forEachChunk(pool, chunks, t -> {
+                    int[] count = counts[t][shift / RADIX_BITS];
+                    Arrays.fill(count, 0);
+                    for (int i = chunkFrom(n, chunks, t), to = chunkFrom(n, chunks, t + 1); i < to; i++) {
+                        count[(int) ((current[i] ^ Long.MIN_VALUE) >>> shift) & MASK]++;
+                    }
+                });
+            }
+            int[][] offsets = offsets(counts, pass);
+            long[] from = src, to = dst;
+            forEachChunk(pool, chunks, t -> {
+                int[] offset = offsets[t];
+                for (int i = chunkFrom(n, chunks, t), end = chunkFrom(n, chunks, t + 1); i < end; i++) {
+                    long value = from[i];
+                    to[offset[(int) ((value ^ Long.MIN_VALUE) >>> shift) & MASK]++] = value;
+                }
+            });
+            dst = src;
+            src = to;
+            scattered = true;
+        }
+        if (src != array) System.arraycopy(src, 0, array, 0, n);
+    }
+
+    /**
+     * float的基数排序，顺序与Arrays.sort(float[])相同：-0.0在0.0之前，NaN在最后
+     * 负数的IEEE 754位模式越大数值越小，把负数除符号位外的各位取反，得到按有符号int比较就有序的key
+     * 这个变换是自反的，排好序后再做一次即还原
+     */
+    public void sort(float[] array) {
+        int[] keys = new int[array.length];
+        for (int i = 0; i < keys.length; i++) {
+            int bits = Float.floatToIntBits(array[i]);
+            keys[i] = bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+        }
+        sort(keys);
+        for (int i = 0; i < keys.length; i++) {
+            int key = keys[i];
+            array[i] = Float.intBitsToFloat(key ^ ((key >> 31) & Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * double的基数排序，变换同sort(float[])
+     */
+    public void sort(double[] array) {
+        long[] keys = new long[array.length];
+        for (int i = 0; i < keys.length; i++) {
+            long bits = Double.doubleToLongBits(array[i]);
+            keys[i] = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+        }
+        sort(keys);
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            array[i] = Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+        }
+    }
+
+    // 第pass趟所有元素落在同一个桶里，这一趟不改变顺序
+    private static boolean uniform(int[][][] counts, int pass, int n) {
+        for (int digit = 0; digit < RADIX; digit++) {
+            int total = 0;
+            for (int[][] count : counts) total += count[pass][digit];
+            if (total == n) return true;
+            if (total > 0) return false;
+        }
+        return false;
+    }
+
+    // 前缀和：第t块中数字为digit的元素从offsets[t][digit]开始写，块号小的排在前面，保证稳定
+    private static int[][] offsets(int[][][] counts, int pass) {
+        int[][] offsets = new int[counts.length][RADIX];
+        int sum = 0;
+        for (int digit = 0; digit < RADIX; digit++) {
+            for (int t = 0; t < counts.length; t++) {
+                offsets[t][digit] = sum;
+                sum += counts[t][pass][digit];
+            }
+        }
+        return offsets;
+    }
+
+    // 把[0, n)均分为chunks块，第t块的起始下标
+    static int chunkFrom(int n, int chunks, int t) {
+        return (int) ((long) n * t / chunks);
+    }
+
+    // 在线程池中对每一块执行body，只有一块时在当前线程执行
+    static void forEachChunk(ForkJoinPool pool, int chunks, IntConsumer body) {
+        if (chunks == 1) {
+            body.accept(0);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for (int t = 0; t < chunks; t++) {
+            int chunk = t;
+            tasks.add(ForkJoinTask.adapt(() -> body.accept(chunk)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+
     public static void main(String[] args) {
         RadixSort sort = new RadixSort();
         int[] arr = {15, 3, 8, 5, 98, 23, 88, 53, 1, 10, 7, 19};
         sort.radixSort(arr);
         System.out.println(Arrays.toString(arr));
+
+        // 原来的radixSort会丢掉负数，sort(int[])按有符号顺序排序
+        int[] signed = {15, -3, 8, Integer.MIN_VALUE, 98, -23, 0, Integer.MAX_VALUE, -1};
+        sort.sort(signed);
+        System.out.println(Arrays.toString(signed));
+        double[] doubles = {1.5, -0.0, Double.NaN, -2.25, 0.0, Double.NEGATIVE_INFINITY, 3e300, -1e-300};
+        sort.sort(doubles);
+        System.out.println(Arrays.toString(doubles));
+
+        // 大数组与Arrays.sort比较结果和耗时，低24位随机的数据会跳过最高字节那一趟
+        int n = 5_000_000;
+        java.util.Random random = new java.util.Random(42);
+        int[] ints = new int[n], narrow = new int[n];
+        long[] longs = new long[n];
+        float[] floats = new float[n];
+        for (int i = 0; i < n; i++) {
+            ints[i] = random.nextInt();
+            narrow[i] = random.nextInt(1 << 24);
+            longs[i] = random.nextLong();
+            floats[i] = (float) random.nextGaussian();
+        }
+        for (Object input : new Object[]{ints, narrow, longs, floats}) {
+            Object expected = clone(input), actual = clone(input);
+            long start = System.nanoTime();
+            if (expected instanceof int[]) Arrays.sort((int[]) expected);
+            else if (expected instanceof long[]) Arrays.sort((long[]) expected);
+            else Arrays.sort((float[]) expected);
+            long jdk = System.nanoTime() - start;
+            start = System.nanoTime();
+            if (actual instanceof int[]) sort.sort((int[]) actual);
+            else if (actual instanceof long[]) sort.sort((long[]) actual);
+            else sort.sort((float[]) actual);
+            long radix = System.nanoTime() - start;
+            System.out.printf("%s：基数排序%.1fms，Arrays.sort %.1fms，结果一致：%s%n", input.getClass().getSimpleName(),
+                    radix / 1e6, jdk / 1e6, Arrays.deepEquals(new Object[]{expected}, new Object[]{actual}));
+        }
+    }
+
+    private static Object clone(Object array) {
+        if (array instanceof int[]) return ((int[]) array).clone();
+        if (array instanceof long[]) return ((long[]) array).clone();
+        return ((float[]) array).clone();
     }
 }
@@ -49,6 +49,41 @@ public class SelectSort {
         }
     }
 
+    /**
+     * 对array[from, to)堆排序，把from号元素当作堆顶，供快速排序递归过深时兜底
+     * 用循环代替adjustHeap的递归下沉，不额外占用栈
+     */
+    public void heapSort(int[] array, int from, int to) {
+        int length = to - from;
+        buildHeap(array, from, length);
+        while (length > 1) {
+            length--;
+            swap(array, from, from + length);
+            siftDown(array, from, 0, length);
+        }
+    }
+
+    // 把array[from, from + length)调整为最大堆，from号元素为堆顶
+    void buildHeap(int[] array, int from, int length) {
+        for (int i = length / 2 - 1; i >= 0; i--) {
+            siftDown(array, from, i, length);
+        }
+    }
+
+    // 以from为堆顶下标，把堆中第i个元素下沉到合适的位置
+    void siftDown(int[] array, int from, int i, int length) {
+        int temp = array[from + i];
+        int child;
+        while ((child = i * 2 + 1) < length) {
+            // 取较大的子节点
+            if (child + 1 < length && array[from + child + 1] > array[from + child]) child++;
+            if (array[from + child] <= temp) break;
+            array[from + i] = array[from + child];
+            i = child;
+        }
+        array[from + i] = temp;
+    }
+
     // 建立最大堆，把数组看成一个堆结构，0号元素为堆顶
     // i号元素的左子节点为2*i+1号元素，右子节点为2*i+2号元素
     private void buildMaxHeap(int[] array, int length) {
@@ -5,6 +5,14 @@ import java.util.Arrays;
 // 交换排序
 public class SwapSort {
 
+    // 区间长度不超过该值时改用直接插入排序
+    private static final int INSERTION_THRESHOLD = 24;
+    // 区间长度超过该值时用九数取中(ninther)选基准，否则用三数取中
+    private static final int NINTHER_THRESHOLD = 128;
+
+    private final InsertSort insertSort = new InsertSort();
+    private final SelectSort selectSort = new SelectSort();
+
     /**
      * 冒泡排序
      * <p>
@@ -30,17 +38,180 @@ public class SwapSort {
      * 选择一个基准元素,通常选择第一个元素或者最后一个元素
      * 通过一趟扫描，将待排序列分成两部分,一部分比基准元素小,一部分大于等于基准元素,
      * 此时基准元素在其排好序后的正确位置,然后再用同样的方法递归地排序划分的两部分。
+     *
+     * @param method 1：以第一个元素为基准；2：以随机元素为基准；3：生产模式，见introSort
      */
     public void quick(int[] array, int method) {
         if (array.length > 0) {
             if (method == 1) {
                 quickSort(array, 0, array.length - 1);
+            } else if (method == 3) {
+                introSort(array);
             } else {
                 quickSortRandom(array, 0, array.length - 1);
             }
         }
     }
 
+    /**
+     * 内省排序(introsort)，快速排序的生产模式
+     * <p>
+     * 1.三路划分：一趟扫描把区间分成小于、等于、大于基准三部分，等于基准的元素不再参与递归，重复值多时接近O(n)
+     * 2.基准取三数中值，大区间取九数中值(ninther)，有序、逆序的输入也能均匀划分
+     * 3.区间不超过INSERTION_THRESHOLD个元素时改用直接插入排序
+     * 4.递归深度超过2*log2(n)时改用堆排序，最坏情况也是O(nlogn)
+     * 5.只递归较小的一侧，较大的一侧循环处理，栈深度不超过log2(n)
+     * 另外先扫描一遍，整体已经有序或严格逆序(时间戳、自增ID常见)时直接返回或翻转
+     */
+    public void introSort(int[] array) {
+        if (presorted(array)) return;
+        int depthLimit = 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(array.length));
+        introSort(array, 0, array.length - 1, depthLimit);
+    }
+
+    private void introSort(int[] array, int low, int high, int depthLimit) {
+        while (high - low + 1 > INSERTION_THRESHOLD) {
+            if (depthLimit-- == 0) {
+                selectSort.heapSort(array, low, high + 1);
+                return;
+            }
+            int pivot = array[medianIndex(array, low, high)];
+            // 划分后[low, lt)小于基准，[lt, gt]等于基准，(gt, high]大于基准
+            int lt = low, i = low, gt = high;
+            while (i <= gt) {
+                int value = array[i];
+                if (value < pivot) {
+                    array[i++] = array[lt];
+                    array[lt++] = value;
+                } else if (value > pivot) {
+                    array[i] = array[gt];
+                    array[gt--] = value;
+                } else {
+                    i++;
+                }
+            }
+            if (lt - low < high - gt) {
+                introSort(array, low, lt - 1, depthLimit);
+                low = gt + 1;
+            } else {
+                introSort(array, gt + 1, high, depthLimit);
+                high = lt - 1;
+            }
+        }
+        insertSort.directInsert(array, low, high + 1);
+    }
+
+    /**
+     * 选择第k小的元素(k从0开始)，不排序整个数组，平均和最坏都是O(n)
+     * <p>
+     * 返回后array[k]就是排好序时该位置的元素，[0, k)都不大于它，(k, length)都不小于它。
+     * 内省选择(introselect)：与introSort相同的三路划分和三数/九数取中，但只继续处理包含k的一侧；
+     * 划分次数超过2*log2(n)时说明基准一直选得不好，改用中位数的中位数(median of medians)选基准，
+     * 它保证每次至少去掉约30%的元素，最坏情况也是线性的。
+     * 要取最大的k个元素，选第length - k小的元素即可，[length - k, length)就是最大的k个。
+     */
+    public int select(int[] array, int k) {
+        if (k < 0 || k >= array.length) {
+            throw new RuntimeException("k越界：" + k + "，数组长度：" + array.length);
+        }
+        int depthLimit = 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(array.length));
+        select(array, 0, array.length - 1, k, depthLimit);
+        return array[k];
+    }
+
+    /**
+     * 部分排序：把最小的k个元素按升序放到[0, k)，其余元素在[k, length)中顺序不定
+     * 先选出第k - 1小的元素，再只排序它前面的k - 1个，O(n + klogk)
+     */
+    public void partialSort(int[] array, int k) {
+        if (k < 0 || k > array.length) {
+            throw new RuntimeException("k越界：" + k + "，数组长度：" + array.length);
+        }
+        if (k == 0) return;
+        select(array, k - 1);
+        int depthLimit = 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(k));
+        introSort(array, 0, k - 2, depthLimit);
+    }
+
+    private void select(int[] array, int low, int high, int k, int depthLimit) {
+        while (high - low + 1 > INSERTION_THRESHOLD) {
+            int pivot = array[depthLimit-- > 0 ? medianIndex(array, low, high) : medianOfMedians(array, low, high)];
+            // 划分方式同introSort
+            int lt = low, i = low, gt = high;
+            while (i <= gt) {
+                int value = array[i];
+                if (value < pivot) {
+                    array[i++] = array[lt];
+                    array[lt++] = value;
+                } else if (value > pivot) {
+                    array[i] = array[gt];
+                    array[gt--] = value;
+                } else {
+                    i++;
+                }
+            }
+            if (k < lt) {
+                high = lt - 1;
+            } else if (k > gt) {
+                low = gt + 1;
+            } else {
+                return;
+            }
+        }
+        insertSort.directInsert(array, low, high + 1);
+    }
+
+    /**
+     * 中位数的中位数，返回基准元素的下标
+     * 每5个元素一组用插入排序求中位数，各组中位数交换到区间前部，再递归选出它们的中位数；
+     * 递归时depthLimit为0，始终使用本方法选基准，保证最坏情况线性
+     */
+    private int medianOfMedians(int[] array, int low, int high) {
+        int groups = 0;
+        for (int from = low; from <= high; from += 5) {
+            int to = Math.min(from + 5, high + 1);
+            insertSort.directInsert(array, from, to);
+            swap(array, low + groups++, (from + to - 1) >>> 1);
+        }
+        int mid = low + (groups - 1) / 2;
+        select(array, low, low + groups - 1, mid, 0);
+        return mid;
+    }
+
+    // 非降序返回true；严格降序时原地翻转后返回true；其他情况在第一次反向处停止扫描
+    private boolean presorted(int[] array) {
+        int i = 1;
+        while (i < array.length && array[i - 1] <= array[i]) i++;
+        if (i == array.length) return true;
+        if (i > 1) return false;
+        while (i < array.length && array[i - 1] > array[i]) i++;
+        if (i < array.length) return false;
+        for (int l = 0, h = array.length - 1; l < h; l++, h--) {
+            swap(array, l, h);
+        }
+        return true;
+    }
+
+    // 三数取中或九数取中，返回基准元素的下标
+    private int medianIndex(int[] array, int low, int high) {
+        int mid = (low + high) >>> 1;
+        if (high - low + 1 > NINTHER_THRESHOLD) {
+            int step = (high - low + 1) / 8;
+            int a = median3(array, low, low + step, low + 2 * step);
+            int b = median3(array, mid - step, mid, mid + step);
+            int c = median3(array, high - 2 * step, high - step, high);
+            return median3(array, a, b, c);
+        }
+        return median3(array, low, mid, high);
+    }
+
+    private int median3(int[] array, int a, int b, int c) {
+        if (array[a] < array[b]) {
+            return array[b] < array[c] ? b : (array[a] < array[c] ? c : a);
+        }
+        return array[b] > array[c] ? b : (array[a] > array[c] ? c : a);
+    }
+
     private void quickSort(int[] array, int low, int high) {
         if (low < high) {
             int index = partitionFirst(array, low, high);
@@ -102,6 +273,11 @@ public class SwapSort {
         sort.bubble(arr);
         sort.quick(arr, 1);
         sort.quick(arr, 2);
+        sort.quick(arr, 3);
         System.out.println(Arrays.toString(arr));
+        int[] scores = {15, 3, 8, 5, 98, 23, 88, 53, 1, 10, 7, 19};
+        System.out.println("第4小：" + sort.select(scores, 3));
+        sort.partialSort(scores, 5);
+        System.out.println("最小的5个：" + Arrays.toString(Arrays.copyOf(scores, 5)));
     }
 }
@@ -0,0 +1,79 @@
+package ai.yunxi.sort;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 对比自适应归并排序与原来的归并排序、ping-pong归并排序和Arrays.sort在接近有序输入上的耗时
+ * 输入为有序数组随机交换k对元素，k依次为0、10、1000、100000，另加逆序、升序run拼接和随机输入
+ * 参数：数组长度，默认1000万
+ */
+public class TestAdaptiveMergeSort {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        Random random = new Random(42);
+        Map<String, int[]> inputs = new LinkedHashMap<>();
+        for (int k : new int[]{0, 10, 1000, 100_000}) {
+            int[] input = new int[n];
+            for (int i = 0; i < n; i++) input[i] = i;
+            for (int i = 0; i < k; i++) {
+                int a = random.nextInt(n), b = random.nextInt(n);
+                int temp = input[a];
+                input[a] = input[b];
+                input[b] = temp;
+            }
+            inputs.put("交换" + k + "对", input);
+        }
+        int[] reversed = new int[n], runs = new int[n], randomInput = new int[n];
+        int period = Math.max(1, n / 16);
+        for (int i = 0; i < n; i++) {
+            reversed[i] = n - i;
+            // 16段升序run
+            runs[i] = i % period;
+            randomInput[i] = random.nextInt();
+        }
+        inputs.put("逆序", reversed);
+        inputs.put("16段升序", runs);
+        inputs.put("随机", randomInput);
+
+        MergeSort sort = new MergeSort();
+        System.out.printf("%-12s %14s %12s %16s %14s %8s%n", "输入", "mergeSort(ms)", "sort(ms)",
+                "adaptiveSort(ms)", "Arrays.sort(ms)", "正确");
+        for (Map.Entry<String, int[]> entry : inputs.entrySet()) {
+            int[] input = entry.getValue();
+            int[] expected = input.clone();
+            Arrays.sort(expected);
+            long[] costs = new long[4];
+            Arrays.fill(costs, Long.MAX_VALUE);
+            boolean same = true;
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                int[] result = sort.mergeSort(input.clone());
+                costs[0] = Math.min(costs[0], System.nanoTime() - start);
+                same &= Arrays.equals(result, expected);
+
+                int[] array = input.clone();
+                start = System.nanoTime();
+                sort.sort(array);
+                costs[1] = Math.min(costs[1], System.nanoTime() - start);
+                same &= Arrays.equals(array, expected);
+
+                array = input.clone();
+                start = System.nanoTime();
+                sort.adaptiveSort(array);
+                costs[2] = Math.min(costs[2], System.nanoTime() - start);
+                same &= Arrays.equals(array, expected);
+
+                array = input.clone();
+                start = System.nanoTime();
+                Arrays.sort(array);
+                costs[3] = Math.min(costs[3], System.nanoTime() - start);
+            }
+            System.out.printf("%-12s %14.1f %12.1f %16.1f %14.1f %8s%n", entry.getKey(), costs[0] / 1e6,
+                    costs[1] / 1e6, costs[2] / 1e6, costs[3] / 1e6, same);
+        }
+    }
+}
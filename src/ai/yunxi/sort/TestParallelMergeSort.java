@@ -0,0 +1,80 @@
+package ai.yunxi.sort;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 对比原来的归并排序、单缓冲区ping-pong归并排序、不同并行度的并行归并排序和Arrays.parallelSort
+ * 参数：数组长度，默认1000万；最大并行度，默认为CPU核数
+ */
+public class TestParallelMergeSort {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int maxParallelism = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Random random = new Random(42);
+        int[] input = new int[n];
+        for (int i = 0; i < n; i++) {
+            input[i] = random.nextInt();
+        }
+        int[] expected = input.clone();
+        Arrays.sort(expected);
+        MergeSort sort = new MergeSort();
+
+        System.out.printf("%-28s %10s %8s%n", "实现", "耗时(ms)", "正确");
+        int[] result = null;
+        long cost = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            result = sort.mergeSort(input.clone());
+            cost = Math.min(cost, System.nanoTime() - start);
+        }
+        System.out.printf("%-28s %10.1f %8s%n", "mergeSort(每层复制)", cost / 1e6, Arrays.equals(result, expected));
+
+        cost = Long.MAX_VALUE;
+        boolean same = true;
+        for (int round = 0; round < 3; round++) {
+            int[] array = input.clone();
+            long start = System.nanoTime();
+            sort.sort(array);
+            cost = Math.min(cost, System.nanoTime() - start);
+            same &= Arrays.equals(array, expected);
+        }
+        System.out.printf("%-28s %10.1f %8s%n", "sort(单缓冲区)", cost / 1e6, same);
+
+        double base = 0;
+        // 并行度依次为1、2、4……，最后一次为maxParallelism
+        for (int parallelism = 1; parallelism <= maxParallelism;
+             parallelism = parallelism == maxParallelism ? parallelism + 1 : Math.min(parallelism * 2, maxParallelism)) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            cost = Long.MAX_VALUE;
+            same = true;
+            for (int round = 0; round < 3; round++) {
+                int[] array = input.clone();
+                long start = System.nanoTime();
+                sort.parallelSort(array, pool);
+                cost = Math.min(cost, System.nanoTime() - start);
+                same &= Arrays.equals(array, expected);
+            }
+            pool.shutdown();
+            if (parallelism == 1) base = cost;
+            System.out.printf("%-28s %10.1f %8s  加速比%.2f%n", "parallelSort(" + parallelism + "线程)", cost / 1e6, same, base / cost);
+        }
+
+        cost = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            int[] array = input.clone();
+            long start = System.nanoTime();
+            Arrays.parallelSort(array);
+            cost = Math.min(cost, System.nanoTime() - start);
+        }
+        System.out.printf("%-28s %10.1f%n", "Arrays.parallelSort", cost / 1e6);
+
+        // 已经有序的输入跳过所有归并，只剩复制
+        int[] sorted = expected.clone();
+        long start = System.nanoTime();
+        sort.parallelSort(sorted);
+        System.out.printf("有序输入：%.1fms，正确：%s%n", (System.nanoTime() - start) / 1e6, Arrays.equals(sorted, expected));
+    }
+}
@@ -0,0 +1,147 @@
+package ai.yunxi.sort;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 对比快速排序的生产模式与Arrays.sort在随机、有序、逆序、少量不同值输入上的耗时
+ * 每种输入预热后取多轮中的最小值，并与Arrays.sort的结果逐个比较
+ */
+public class TestQuickSort {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(42);
+        Map<String, int[]> inputs = new LinkedHashMap<>();
+        int[] randomInput = new int[n], sorted = new int[n], reversed = new int[n], fewUnique = new int[n];
+        for (int i = 0; i < n; i++) {
+            randomInput[i] = random.nextInt();
+            sorted[i] = i;
+            reversed[i] = n - i;
+            fewUnique[i] = random.nextInt(8);
+        }
+        inputs.put("随机", randomInput);
+        inputs.put("有序", sorted);
+        inputs.put("逆序", reversed);
+        inputs.put("少量不同值", fewUnique);
+
+        SwapSort sort = new SwapSort();
+        System.out.printf("%-10s %14s %14s %10s%n", "输入", "introSort(ms)", "Arrays.sort(ms)", "结果一致");
+        for (Map.Entry<String, int[]> entry : inputs.entrySet()) {
+            int[] input = entry.getValue();
+            int[] expected = input.clone();
+            Arrays.sort(expected);
+
+            long quickCost = Long.MAX_VALUE, jdkCost = Long.MAX_VALUE;
+            boolean same = true;
+            for (int round = 0; round < 10; round++) {
+                int[] array = input.clone();
+                long start = System.nanoTime();
+                sort.quick(array, 3);
+                quickCost = Math.min(quickCost, System.nanoTime() - start);
+                same &= Arrays.equals(array, expected);
+
+                array = input.clone();
+                start = System.nanoTime();
+                Arrays.sort(array);
+                jdkCost = Math.min(jdkCost, System.nanoTime() - start);
+            }
+            System.out.printf("%-10s %14.2f %14.2f %10s%n", entry.getKey(), quickCost / 1e6, jdkCost / 1e6, same);
+        }
+
+        // 专门构造的"中值杀手"会让三数取中退化，堆排序兜底后仍为O(nlogn)
+        int[] killer = medianOf3Killer(n);
+        boolean[] seen = new boolean[n];
+        for (int value : killer) {
+            if (value < 0 || value >= n || seen[value]) {
+                throw new RuntimeException("中值杀手不是0..n-1的排列：" + value);
+            }
+            seen[value] = true;
+        }
+        int[] array = killer.clone();
+        long start = System.nanoTime();
+        sort.quick(array, 3);
+        long cost = System.nanoTime() - start;
+        int[] expected = killer.clone();
+        Arrays.sort(expected);
+        System.out.printf("中值杀手输入：%.2fms，结果一致：%s%n", cost / 1e6, Arrays.equals(array, expected));
+    }
+
+    /**
+     * 针对introSort的三数/九数取中构造"中值杀手"，结果是0..n-1的一个排列
+     * 按introSort的规则模拟划分，元素的值在第一次被选为候选时才确定：每次取中前把候选中尚未赋值的元素依次赋成最小的值，
+     * 每个三数组至少有两个已赋值的元素，中值总是其中较大的一个，基准因此是区间中很小的元素，每次划分只切掉几个元素。
+     * 未赋值的元素视为比所有已赋值的都大，之后赋的值也确实更大，模拟中的比较结果与真实排序一致。
+     * 模拟到深度上限为止，剩余元素按下标顺序赋值，真实排序到这里改用堆排序
+     */
+    private static int[] medianOf3Killer(int n) {
+        // ids[i]是模拟中位置i上的元素在原数组中的下标，value[id]为-1表示尚未赋值
+        int[] ids = new int[n], value = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i;
+            value[i] = -1;
+        }
+        int[] next = {0};
+        int low = 0, high = n - 1;
+        int depthLimit = 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(n));
+        for (int depth = 0; depth < depthLimit && high - low + 1 > 24; depth++) {
+            int mid = (low + high) >>> 1, pivotAt;
+            if (high - low + 1 > 128) {
+                int step = (high - low + 1) / 8;
+                int a = killerMedian3(ids, value, next, low, low + step, low + 2 * step);
+                int b = killerMedian3(ids, value, next, mid - step, mid, mid + step);
+                int c = killerMedian3(ids, value, next, high - 2 * step, high - step, high);
+                pivotAt = killerMedian3(ids, value, next, a, b, c);
+            } else {
+                pivotAt = killerMedian3(ids, value, next, low, mid, high);
+            }
+            // 与introSort相同的三路划分，值互不相同，等于基准的只有基准本身
+            int pivot = value[ids[pivotAt]];
+            int lt = low, i = low, gt = high;
+            while (i <= gt) {
+                int id = ids[i], v = value[id] < 0 ? Integer.MAX_VALUE : value[id];
+                if (v < pivot) {
+                    ids[i++] = ids[lt];
+                    ids[lt++] = id;
+                } else if (v > pivot) {
+                    ids[i] = ids[gt];
+                    ids[gt--] = id;
+                } else {
+                    i++;
+                }
+            }
+            // 较小的左侧已全部赋值，继续处理右侧
+            low = gt + 1;
+        }
+        for (int id = 0; id < n; id++) {
+            if (value[id] < 0) value[id] = next[0]++;
+        }
+        return value;
+    }
+
+    // 先把候选中未赋值的元素赋成最小的值，直到至少两个已赋值，再按SwapSort.median3的比较顺序取中
+    private static int killerMedian3(int[] ids, int[] value, int[] next, int a, int b, int c) {
+        int assigned = 0;
+        for (int i : new int[]{a, b, c}) {
+            if (value[ids[i]] >= 0) assigned++;
+        }
+        for (int i : new int[]{a, b, c}) {
+            if (assigned < 2 && value[ids[i]] < 0) {
+                value[ids[i]] = next[0]++;
+                assigned++;
+            }
+        }
+        int va = valueAt(ids, value, a), vb = valueAt(ids, value, b), vc = valueAt(ids, value, c);
+        if (va < vb) {
+            return vb < vc ? b : (va < vc ? c : a);
+        }
+        return vb > vc ? b : (va > vc ? c : a);
+    }
+
+    // 未赋值的元素视为最大
+    private static int valueAt(int[] ids, int[] value, int i) {
+        return value[ids[i]] < 0 ? Integer.MAX_VALUE : value[ids[i]];
+    }
+}
@@ -0,0 +1,208 @@
+package ai.yunxi.sort;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 排序算法基准测试：各排序在不同规模和数据分布下的每元素耗时(ns)和每元素分配的字节数
+ * <p>
+ * 参数：最大规模，默认1e6，规模从1e2开始每次乘10；测1e8时需要-Xmx4g以上。
+ * 每个规模、分布只生成一次输入，每次排序前复制；小规模重复多轮取最小值。
+ * O(n^2)的排序和旧的装箱实现只测到各自的maxN，快速排序的旧模式在有序、少量不同值输入上会退化，也有各自的上限。
+ * 分配字节数来自com.sun.management.ThreadMXBean，对所有存活线程求和，包括ForkJoinPool的工作线程。
+ */
+public class TestSortBenchmark {
+
+    // 每个用例至少运行的时长
+    private static final long MIN_NANOS = 200_000_000L;
+    private static final int MAX_ROUNDS = 1000;
+
+    static class Algorithm {
+        final String name;
+        final Consumer<int[]> sorter;
+        // 超过该规模不测
+        final int maxN;
+        // 只支持非负数的旧实现
+        final boolean nonNegativeOnly;
+        // 最大值与最小值之差超过该值不测
+        final long maxRange;
+
+        Algorithm(String name, Consumer<int[]> sorter, int maxN, boolean nonNegativeOnly) {
+            this(name, sorter, maxN, nonNegativeOnly, Long.MAX_VALUE);
+        }
+
+        Algorithm(String name, Consumer<int[]> sorter, int maxN, boolean nonNegativeOnly, long maxRange) {
+            this.name = name;
+            this.sorter = sorter;
+            this.maxN = maxN;
+            this.nonNegativeOnly = nonNegativeOnly;
+            this.maxRange = maxRange;
+        }
+
+        boolean supports(int[] input) {
+            if (input.length > maxN) return false;
+            int max = Integer.MIN_VALUE, min = Integer.MAX_VALUE;
+            for (int value : input) {
+                max = Math.max(max, value);
+                min = Math.min(min, value);
+            }
+            return input.length == 0 || (!nonNegativeOnly || min >= 0) && (long) max - min <= maxRange;
+        }
+    }
+
+    static List<Algorithm> algorithms() {
+        SwapSort swapSort = new SwapSort();
+        SelectSort selectSort = new SelectSort();
+        InsertSort insertSort = new InsertSort();
+        MergeSort mergeSort = new MergeSort();
+        RadixSort radixSort = new RadixSort();
+        CountSort countSort = new CountSort();
+        BucketSort bucketSort = new BucketSort();
+        int quadratic = 100_000, unlimited = Integer.MAX_VALUE;
+
+        List<Algorithm> list = new ArrayList<>();
+        list.add(new Algorithm("Arrays.sort", Arrays::sort, unlimited, false));
+        list.add(new Algorithm("SwapSort.bubble", swapSort::bubble, 10_000, false));
+        // 以第一个元素为基准，有序输入时递归深度为n
+        list.add(new Algorithm("SwapSort.quick(1)", a -> swapSort.quick(a, 1), 10_000, false));
+        // 等于基准的元素都分到左边，少量不同值时退化为O(n^2)
+        list.add(new Algorithm("SwapSort.quick(2)", a -> swapSort.quick(a, 2), 10_000, false));
+        list.add(new Algorithm("SwapSort.quick(3)", a -> swapSort.quick(a, 3), unlimited, false));
+        list.add(new Algorithm("SelectSort.simpleSelect", selectSort::simpleSelect, quadratic, false));
+        list.add(new Algorithm("SelectSort.heapSort(1)", a -> selectSort.heapSort(a, 1), unlimited, false));
+        list.add(new Algorithm("SelectSort.heapSort(range)", a -> selectSort.heapSort(a, 0, a.length), unlimited, false));
+        list.add(new Algorithm("InsertSort.directInsert", insertSort::directInsert, quadratic, false));
+        list.add(new Algorithm("InsertSort.dichotomy", insertSort::dichotomy, quadratic, false));
+        list.add(new Algorithm("InsertSort.shell", insertSort::shell, 10_000_000, false));
+        list.add(new Algorithm("MergeSort.mergeSort", a -> {
+            int[] sorted = mergeSort.mergeSort(a);
+            System.arraycopy(sorted, 0, a, 0, a.length);
+        }, 10_000_000, false));
+        list.add(new Algorithm("MergeSort.sort", mergeSort::sort, unlimited, false));
+        list.add(new Algorithm("MergeSort.adaptiveSort", mergeSort::adaptiveSort, unlimited, false));
+        list.add(new Algorithm("MergeSort.parallelSort", mergeSort::parallelSort, unlimited, false));
+        list.add(new Algorithm("RadixSort.radixSort", radixSort::radixSort, 1_000_000, true));
+        list.add(new Algorithm("RadixSort.sort", radixSort::sort, unlimited, false));
+        list.add(new Algorithm("CountSort.countSort", countSort::countSort, unlimited, false));
+        list.add(new Algorithm("CountSort.parallelCountSort", countSort::parallelCountSort, unlimited, false));
+        // 桶内有不同值时桶大小每层只减1，递归深度约为桶大小，所以只能用大小为1的桶，值域即桶数
+        list.add(new Algorithm("BucketSort.bucketSort(List)", a -> {
+            List<Integer> boxed = Arrays.stream(a).boxed().collect(Collectors.toList());
+            List<Integer> sorted = bucketSort.bucketSort(boxed, 1);
+            for (int i = 0; i < a.length; i++) a[i] = sorted.get(i);
+        }, 100_000, false, 1 << 20));
+        list.add(new Algorithm("BucketSort.sort", bucketSort::sort, unlimited, false));
+        list.add(new Algorithm("BucketSort.parallelSort", bucketSort::parallelSort, unlimited, false));
+        return list;
+    }
+
+    /**
+     * 生成各种分布的输入，值都是非负数，旧的基数排序和桶排序也能参加
+     */
+    static Map<String, int[]> distributions(int n, Random random) {
+        Map<String, int[]> inputs = new LinkedHashMap<>();
+        int[] uniform = new int[n], sorted = new int[n], reversed = new int[n], sawtooth = new int[n],
+                fewUnique = new int[n], zipf = new int[n];
+        int period = Math.max(1, n / 16);
+        double[] cdf = zipfCdf(Math.min(n, 1_000_000), 1.0);
+        for (int i = 0; i < n; i++) {
+            uniform[i] = random.nextInt(Integer.MAX_VALUE);
+            sorted[i] = i;
+            reversed[i] = n - i;
+            // 16段升序
+            sawtooth[i] = i % period;
+            fewUnique[i] = random.nextInt(8);
+            zipf[i] = zipfSample(cdf, random.nextDouble());
+        }
+        inputs.put("uniform", uniform);
+        inputs.put("sorted", sorted);
+        inputs.put("reversed", reversed);
+        inputs.put("sawtooth", sawtooth);
+        inputs.put("fewUnique", fewUnique);
+        inputs.put("zipf", zipf);
+        return inputs;
+    }
+
+    // 第k个值(k从1开始)的概率正比于1/k^s的累积分布
+    private static double[] zipfCdf(int values, double s) {
+        double[] cdf = new double[values];
+        double sum = 0;
+        for (int k = 1; k <= values; k++) {
+            sum += 1 / Math.pow(k, s);
+            cdf[k - 1] = sum;
+        }
+        for (int k = 0; k < values; k++) {
+            cdf[k] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int zipfSample(double[] cdf, double u) {
+        int index = Arrays.binarySearch(cdf, u);
+        return index >= 0 ? index : Math.min(-index - 1, cdf.length - 1);
+    }
+
+    // 所有存活线程累计分配的字节数
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    public static void main(String[] args) {
+        long maxN = args.length > 0 ? (long) Double.parseDouble(args[0]) : 1_000_000;
+        List<Algorithm> algorithms = algorithms();
+        Random random = new Random(42);
+        // allocatedBytes本身要分配线程ID数组，取多次空测量的最小值作为开销扣除
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            long bytes = allocatedBytes();
+            overhead = Math.min(overhead, allocatedBytes() - bytes);
+        }
+
+        System.out.printf("%-30s %-10s %10s %12s %12s%n", "算法", "分布", "n", "ns/元素", "分配字节/元素");
+        for (long size = 100; size <= maxN; size *= 10) {
+            int n = (int) size;
+            Map<String, int[]> inputs = distributions(n, random);
+            for (Map.Entry<String, int[]> entry : inputs.entrySet()) {
+                int[] input = entry.getValue();
+                int[] expected = input.clone();
+                Arrays.sort(expected);
+                int[] array = new int[n];
+                for (Algorithm algorithm : algorithms) {
+                    if (!algorithm.supports(input)) continue;
+                    long best = Long.MAX_VALUE, allocated = 0, elapsed = 0;
+                    int rounds = 0;
+                    while (rounds < MAX_ROUNDS && (rounds == 0 || elapsed < MIN_NANOS)) {
+                        System.arraycopy(input, 0, array, 0, n);
+                        long bytes = allocatedBytes();
+                        long start = System.nanoTime();
+                        algorithm.sorter.accept(array);
+                        long cost = System.nanoTime() - start;
+                        allocated = Math.max(0, allocatedBytes() - bytes - overhead);
+                        best = Math.min(best, cost);
+                        elapsed += cost;
+                        rounds++;
+                        if (!Arrays.equals(array, expected)) {
+                            throw new RuntimeException(algorithm.name + "在" + entry.getKey() + "分布、n=" + n + "时结果错误");
+                        }
+                        // 大规模只测一轮
+                        if (n >= 10_000_000) break;
+                    }
+                    System.out.printf("%-30s %-10s %10d %12.2f %12.2f%n", algorithm.name, entry.getKey(), n,
+                            (double) best / n, (double) allocated / n);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ai.yunxi.sort;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 排序正确性的随机性质测试：随机生成各种长度和取值的数组，每个排序的结果都必须与Arrays.sort相同
+ * 取值覆盖负数、int的最大最小值、大量重复值、有序和逆序片段；只支持非负数的旧实现把输入的符号位清零，
+ * 超出值域上限的输入跳过。
+ * 参数：随机数组的个数，默认2000；随机种子，默认为当前时间，失败时打印出来以便复现。
+ */
+public class TestSortCorrectness {
+
+    public static void main(String[] args) {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        Random random = new Random(seed);
+        List<TestSortBenchmark.Algorithm> algorithms = TestSortBenchmark.algorithms();
+
+        int checked = 0;
+        for (int trial = 0; trial < trials; trial++) {
+            // 大多数是短数组，覆盖插入排序阈值附近的边界；少数较长，覆盖并行和基数排序的分支
+            int n = trial % 100 == 0 ? random.nextInt(300_000) : random.nextInt(trial % 10 == 0 ? 5000 : 100);
+            int[] input = randomArray(n, random);
+            for (TestSortBenchmark.Algorithm algorithm : algorithms) {
+                // 有规模上限的排序最多测到5000个元素
+                if (algorithm.maxN != Integer.MAX_VALUE && n > 5000) continue;
+                int[] array = input.clone();
+                if (algorithm.nonNegativeOnly) {
+                    for (int i = 0; i < n; i++) array[i] &= Integer.MAX_VALUE;
+                }
+                if (!algorithm.supports(array)) continue;
+                int[] expected = array.clone();
+                Arrays.sort(expected);
+                algorithm.sorter.accept(array);
+                if (!Arrays.equals(array, expected)) {
+                    throw new RuntimeException(algorithm.name + "结果错误，种子" + seed + "，第" + trial + "个数组，n=" + n);
+                }
+                checked++;
+            }
+        }
+        System.out.println("种子" + seed + "：" + trials + "个随机数组，" + checked + "次排序与Arrays.sort一致");
+    }
+
+    private static int[] randomArray(int n, Random random) {
+        int[] array = new int[n];
+        int kind = random.nextInt(6);
+        for (int i = 0; i < n; i++) {
+            switch (kind) {
+                case 0: array[i] = random.nextInt(); break;
+                case 1: array[i] = random.nextInt(16) - 8; break;
+                case 2: array[i] = random.nextBoolean() ? Integer.MIN_VALUE : Integer.MAX_VALUE; break;
+                case 3: array[i] = i - n / 2; break;
+                case 4: array[i] = n - i; break;
+                default: array[i] = random.nextInt(1000) * (random.nextBoolean() ? 1 : -100_000); break;
+            }
+        }
+        // 随机交换几对，打乱有序的片段
+        for (int swaps = random.nextInt(4); swaps > 0 && n > 1; swaps--) {
+            int i = random.nextInt(n), j = random.nextInt(n);
+            int temp = array[i];
+            array[i] = array[j];
+            array[j] = temp;
+        }
+        return array;
+    }
+}
@@ -0,0 +1,142 @@
+package ai.yunxi.sort;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * 流式的Top-K：逐个接收int，始终保留最大的k个，O(nlogk)时间、O(k)内存，不装箱
+ * <p>
+ * 堆直接存放在int[]中，复用SelectSort的建堆和下沉。SelectSort的堆是最大堆，
+ * 这里存的是按位取反后的值(~value)：取反在int上严格单调递减且不会溢出，最大堆的堆顶就是保留的k个元素中最小的一个。
+ * 堆满之后新元素不大于堆顶时直接丢弃，大部分元素只需比较一次；否则替换堆顶再下沉。
+ */
+public class TopK {
+
+    private final SelectSort selectSort = new SelectSort();
+    private final int[] heap;
+    private int size;
+
+    public TopK(int k) {
+        if (k <= 0) {
+            throw new RuntimeException("k必须大于0：" + k);
+        }
+        this.heap = new int[k];
+    }
+
+    public void add(int value) {
+        if (size < heap.length) {
+            heap[size++] = ~value;
+            // 堆刚满时一次性建堆
+            if (size == heap.length) selectSort.buildHeap(heap, 0, size);
+        } else if (value > ~heap[0]) {
+            heap[0] = ~value;
+            selectSort.siftDown(heap, 0, 0, size);
+        }
+    }
+
+    public void addAll(int[] values) {
+        for (int value : values) {
+            add(value);
+        }
+    }
+
+    // 已保留的元素个数，不超过k
+    public int size() {
+        return size;
+    }
+
+    // 当前第k大的元素，即保留的元素中最小的一个；未满k个时抛出异常
+    public int threshold() {
+        if (size < heap.length) {
+            throw new RuntimeException("元素不足" + heap.length + "个：" + size);
+        }
+        return ~heap[0];
+    }
+
+    // 保留的元素按降序排列
+    public int[] toSortedArray() {
+        int[] result = Arrays.copyOf(heap, size);
+        // 取反后的值升序即原值降序
+        selectSort.heapSort(result, 0, size);
+        for (int i = 0; i < size; i++) {
+            result[i] = ~result[i];
+        }
+        return result;
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? (int) Double.parseDouble(args[0]) : 10_000_000;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Random random = new Random(42);
+        int[] input = new int[n];
+        for (int i = 0; i < n; i++) {
+            input[i] = random.nextInt();
+        }
+        SwapSort swapSort = new SwapSort();
+
+        // 对照：整体排序后取最后k个
+        int[] array = input.clone();
+        long start = System.nanoTime();
+        Arrays.sort(array);
+        int[] expected = new int[k];
+        for (int i = 0; i < k; i++) expected[i] = array[n - 1 - i];
+        System.out.printf("%-28s %10.1fms%n", "Arrays.sort", (System.nanoTime() - start) / 1e6);
+
+        array = input.clone();
+        start = System.nanoTime();
+        swapSort.select(array, n - k);
+        Arrays.sort(array, n - k, n);
+        long cost = System.nanoTime() - start;
+        boolean same = true;
+        for (int i = 0; i < k; i++) same &= array[n - 1 - i] == expected[i];
+        System.out.printf("%-28s %10.1fms  正确：%s%n", "SwapSort.select + 排序k个", cost / 1e6, same);
+
+        // partialSort取最小的k个，对取反后的数组做即得最大的k个
+        array = new int[n];
+        for (int i = 0; i < n; i++) array[i] = ~input[i];
+        start = System.nanoTime();
+        swapSort.partialSort(array, k);
+        cost = System.nanoTime() - start;
+        same = true;
+        for (int i = 0; i < k; i++) same &= ~array[i] == expected[i];
+        System.out.printf("%-28s %10.1fms  正确：%s%n", "SwapSort.partialSort", cost / 1e6, same);
+
+        start = System.nanoTime();
+        TopK topK = new TopK(k);
+        topK.addAll(input);
+        int[] result = topK.toSortedArray();
+        cost = System.nanoTime() - start;
+        System.out.printf("%-28s %10.1fms  正确：%s%n", "TopK", cost / 1e6, Arrays.equals(result, expected));
+
+        // 对照：装箱的PriorityQueue
+        start = System.nanoTime();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(k);
+        for (int value : input) {
+            if (queue.size() < k) {
+                queue.add(value);
+            } else if (value > queue.peek()) {
+                queue.poll();
+                queue.add(value);
+            }
+        }
+        System.out.printf("%-28s %10.1fms%n", "PriorityQueue<Integer>", (System.nanoTime() - start) / 1e6);
+
+        // 有序、逆序、全部相同的输入
+        int[][] adversarial = new int[3][n];
+        for (int i = 0; i < n; i++) {
+            adversarial[0][i] = i;
+            adversarial[1][i] = n - i;
+            adversarial[2][i] = 7;
+        }
+        String[] names = {"有序", "逆序", "全部相同"};
+        for (int c = 0; c < adversarial.length; c++) {
+            array = adversarial[c];
+            start = System.nanoTime();
+            int value = swapSort.select(array, n / 2);
+            cost = System.nanoTime() - start;
+            boolean correct = c == 2 ? value == 7 : value == (c == 0 ? n / 2 : n / 2 + 1);
+            System.out.printf("select中位数(%s) %10.1fms  正确：%s%n", names[c], cost / 1e6, correct);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package ai.yunxi.tree;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 双数组字典树(Double-Array Trie)
+ * 与TrieTree的search、prefixNum语义相同，但所有节点存放在三个int[]中，字符集是完整的UTF-16
+ * <p>
+ * 每个节点是数组中的一个下标s，字符c的转移为t = base[s] + c + 1，当check[t] == s时转移存在；
+ * 编码0留给结束标记，节点s有一个编码为0的子节点时说明有单词在s结束。
+ * path[t]同TrieNode.path，是经过节点t的单词数量；结束标记节点的path就是以其父节点结尾的单词数量，即TrieNode.end。
+ * 每个节点只占3个int，没有对象头，也不会为不存在的字符预留指针；查找每层只访问相邻的几个数组元素，不追指针。
+ * <p>
+ * 双数组需要为每个节点的所有子节点一起找到互不冲突的空位，插入新字符时可能要搬动整组子节点，
+ * 所以这里一次性从排好序的单词构建，构建后只读。重复的单词相当于TrieTree中多次insert。
+ * 构建时从根开始深度优先：有序单词中同一前缀的单词是连续的一段，按下一个字符切成若干段就是各个子节点；
+ * 找到能放下所有子节点的base后写入check，再依次处理每一段。
+ * 深度优先用显式的栈代替递归，单词再长也不会栈溢出。
+ */
+public class DoubleArrayTrie {
+
+    // 空位的check值
+    private static final int FREE = -1;
+    // 结束标记的编码
+    private static final int END = 0;
+
+    private int[] base;
+    private int[] check;
+    private int[] path;
+    // 已使用的最大下标
+    private int maxIndex;
+    // 找空位的起点，之前的位置几乎都已使用
+    private int nextCheckPos;
+
+    /**
+     * @param sortedKeys 按String.compareTo升序排列的单词，即按UTF-16编码逐个字符比较，可以有重复；空字符串忽略
+     */
+    public DoubleArrayTrie(String[] sortedKeys) {
+        int from = 0;
+        for (int i = 0; i < sortedKeys.length; i++) {
+            if (sortedKeys[i] == null) {
+                throw new RuntimeException("第" + i + "个单词为null");
+            }
+            if (i > 0 && sortedKeys[i - 1].compareTo(sortedKeys[i]) > 0) {
+                throw new RuntimeException("单词没有排序：" + sortedKeys[i - 1] + "，" + sortedKeys[i]);
+            }
+            // 空字符串排在最前面
+            if (sortedKeys[i].isEmpty()) from = i + 1;
+        }
+        resize(Math.max(1024, sortedKeys.length * 2));
+        check[0] = 0;
+        path[0] = sortedKeys.length - from;
+        if (from < sortedKeys.length) {
+            build(sortedKeys, from);
+        }
+        // 去掉末尾没有用到的部分
+        resize(maxIndex + 1);
+    }
+
+    /**
+     * 从根节点开始深度优先构建，栈中每一帧是(from, to, depth, s)：
+     * 节点s下是[from, to)中的单词，它们在depth处的字符决定s的子节点
+     */
+    private void build(String[] keys, int from) {
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = from;
+        stack[top++] = keys.length;
+        stack[top++] = 0;
+        stack[top++] = 0;
+        int[] codes = new int[16];
+        int[] begins = new int[17];
+        while (top > 0) {
+            int s = stack[--top], depth = stack[--top], to = stack[--top];
+            from = stack[--top];
+            // 有序单词在depth处的编码非降序，相同编码连续，切成若干段
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                int code = code(keys[i], depth);
+                if (count == 0 || code != codes[count - 1]) {
+                    if (count == codes.length) {
+                        codes = Arrays.copyOf(codes, count * 2);
+                        begins = Arrays.copyOf(begins, count * 2 + 1);
+                    }
+                    codes[count] = code;
+                    begins[count++] = i;
+                }
+            }
+            begins[count] = to;
+
+            int b = findBase(codes, count);
+            base[s] = b;
+            for (int i = 0; i < count; i++) {
+                int t = b + codes[i];
+                check[t] = s;
+                path[t] = begins[i + 1] - begins[i];
+                maxIndex = Math.max(maxIndex, t);
+            }
+            // 逆序入栈，先处理编码小的子节点，与递归的顺序相同
+            if (top + 4 * count > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + 4 * count));
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                if (codes[i] != END) {
+                    stack[top++] = begins[i];
+                    stack[top++] = begins[i + 1];
+                    stack[top++] = depth + 1;
+                    stack[top++] = b + codes[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * 找一个base，使base + codes[i]都是空位
+     * 从nextCheckPos开始找第一个子节点的空位；扫描过的区间已使用超过95%时把nextCheckPos移到当前位置，
+     * 避免后面的节点反复扫描前面已经占满的部分
+     */
+    private int findBase(int[] codes, int count) {
+        int first = codes[0], last = codes[count - 1];
+        int pos = Math.max(first + 1, nextCheckPos) - 1;
+        int used = 0;
+        boolean firstFree = true;
+        outer:
+        while (true) {
+            pos++;
+            if (pos >= check.length) resize(check.length * 2);
+            if (check[pos] != FREE) {
+                used++;
+                continue;
+            } else if (firstFree) {
+                nextCheckPos = pos;
+                firstFree = false;
+            }
+            int b = pos - first;
+            if (b + last >= check.length) resize(Math.max(check.length * 2, b + last + 1));
+            for (int i = 1; i < count; i++) {
+                if (check[b + codes[i]] != FREE) continue outer;
+            }
+            if ((double) used / (pos - nextCheckPos + 1) >= 0.95) nextCheckPos = pos;
+            return b;
+        }
+    }
+
+    private void resize(int length) {
+        int old = check == null ? 0 : check.length;
+        base = base == null ? new int[length] : Arrays.copyOf(base, length);
+        check = check == null ? new int[length] : Arrays.copyOf(check, length);
+        path = path == null ? new int[length] : Arrays.copyOf(path, length);
+        if (length > old) Arrays.fill(check, old, length, FREE);
+    }
+
+    // 单词在depth处的编码，单词结束时为END，否则为字符加1
+    private static int code(String key, int depth) {
+        return depth == key.length() ? END : key.charAt(depth) + 1;
+    }
+
+    // 沿word走到的节点，不存在时返回-1
+    private int walk(String word) {
+        int s = 0;
+        for (int i = 0; i < word.length(); i++) {
+            int t = base[s] + word.charAt(i) + 1;
+            if (t >= check.length || check[t] != s) {
+                return -1;
+            }
+            s = t;
+        }
+        return s;
+    }
+
+    /**
+     * 查询word是否在字典树中
+     * 沿word的字符走到最后一个节点e，e有结束标记子节点说明有单词以e结尾
+     */
+    public boolean search(String word) {
+        if (word == null || word.length() == 0) {
+            return false;
+        }
+        int s = walk(word);
+        if (s < 0) {
+            return false;
+        }
+        int t = base[s] + END;
+        return t < check.length && check[t] == s;
+    }
+
+    /**
+     * 查找以pre为前缀的单词数量
+     */
+    public int prefixNum(String pre) {
+        if (pre == null || pre.length() == 0) {
+            return 0;
+        }
+        int s = walk(pre);
+        return s < 0 ? 0 : path[s];
+    }
+
+    // 节点数组的长度，包括其中的空位
+    public int capacity() {
+        return check.length;
+    }
+
+    public long sizeInBytes() {
+        return 3L * Integer.BYTES * check.length;
+    }
+
+    // 当前已使用的堆内存，先尽量触发GC
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) {
+        String[] words = {"abc", "abcd", "abd", "b", "bcd", "abd", "字典", "字典树", "双数组"};
+        Arrays.sort(words);
+        DoubleArrayTrie trie = new DoubleArrayTrie(words);
+        System.out.println(trie.prefixNum("ab"));
+        System.out.println(trie.prefixNum("b"));
+        System.out.println(trie.prefixNum("abc"));
+        System.out.println(trie.prefixNum("bce"));
+        System.out.println(trie.prefixNum("字典"));
+        System.out.println(trie.search("a"));
+        System.out.println(trie.search("b"));
+        System.out.println(trie.search("abcde"));
+        System.out.println(trie.search("abd"));
+        System.out.println(trie.search("字典树"));
+        // 很长的单词，例如URL
+        String longKey = String.join("", java.util.Collections.nCopies(100_000, "a"));
+        DoubleArrayTrie longTrie = new DoubleArrayTrie(new String[]{longKey});
+        System.out.println(longTrie.search(longKey) + " " + longTrie.prefixNum(longKey.substring(0, 50_000)));
+
+        // 与TrieTree对比内存，TrieTree只支持'a'~'z'
+        int n = args.length > 0 ? (int) Double.parseDouble(args[0]) : 300_000;
+        Random random = new Random(42);
+        String[] keys = new String[n];
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            builder.setLength(0);
+            int length = 3 + random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                // 前几个字符集中在少数字母上，模拟真实词典的公共前缀
+                builder.append((char) ('a' + random.nextInt(j < 3 ? 6 : 26)));
+            }
+            keys[i] = builder.toString();
+        }
+        Arrays.sort(keys);
+
+        long before = usedMemory();
+        TrieTree tree = new TrieTree();
+        for (String key : keys) {
+            tree.insert(key);
+        }
+        long treeBytes = usedMemory() - before;
+
+        before = usedMemory();
+        long start = System.nanoTime();
+        trie = new DoubleArrayTrie(keys);
+        long buildCost = System.nanoTime() - start;
+        long trieBytes = usedMemory() - before;
+
+        // 所有单词、所有单词的前缀和随机单词上结果与TrieTree一致
+        boolean same = true;
+        for (int i = 0; i < n; i++) {
+            String key = keys[i];
+            String prefix = key.substring(0, 1 + random.nextInt(key.length()));
+            same &= trie.search(key) == tree.search(key) && trie.search(prefix) == tree.search(prefix)
+                    && trie.prefixNum(prefix) == tree.prefixNum(prefix);
+            String other = key + (char) ('a' + random.nextInt(26));
+            same &= trie.search(other) == tree.search(other) && trie.prefixNum(other) == tree.prefixNum(other);
+        }
+
+        start = System.nanoTime();
+        int found = 0;
+        for (String key : keys) {
+            if (tree.search(key)) found++;
+        }
+        long treeSearch = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (String key : keys) {
+            if (trie.search(key)) found++;
+        }
+        long trieSearch = System.nanoTime() - start;
+
+        System.out.printf("%,d个单词，双数组长度%,d，构建%.1fms，结果一致：%s%n", n, trie.capacity(), buildCost / 1e6, same);
+        System.out.printf("TrieTree：%.1fMB，%.1f字节/单词，查找%.1fns/次%n", treeBytes / 1e6, (double) treeBytes / n,
+                (double) treeSearch / n);
+        System.out.printf("DoubleArrayTrie：%.1fMB(数组%.1fMB)，%.1f字节/单词，查找%.1fns/次，内存减少%.1f倍%n",
+                trieBytes / 1e6, trie.sizeInBytes() / 1e6, (double) trieBytes / n, (double) trieSearch / n,
+                (double) treeBytes / trieBytes);
+        if (found != 2 * n) {
+            throw new RuntimeException("有单词没有找到");
+        }
+    }
+}